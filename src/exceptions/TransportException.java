@@ -4,4 +4,19 @@ package exceptions;
  * Base class for custom exceptions related to the transportation network.
  */
 public class TransportException extends Exception {
+    /**
+     * Creates a new TransportException with no detail message.
+     */
+    public TransportException() {
+        super();
+    }
+
+    /**
+     * Creates a new TransportException with the given detail message.
+     *
+     * @param message The detail message.
+     */
+    public TransportException(String message) {
+        super(message);
+    }
 }
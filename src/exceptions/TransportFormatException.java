@@ -3,6 +3,51 @@ package exceptions;
 /**
  * Exception thrown when an encoded {@link network.Network} file is formatted
  * incorrectly.
+ *
+ * <p>When the error was found while reading a file, the line and column at
+ * which it was found are recorded (see {@link #getLine()} and
+ * {@link #getColumn()}).
  */
 public class TransportFormatException extends TransportException {
+    // the line and column of the error, or 0 if unknown
+    private int line;
+    private int column;
+
+    /**
+     * Creates a new TransportFormatException with no known location.
+     */
+    public TransportFormatException() {
+        super();
+    }
+
+    /**
+     * Creates a new TransportFormatException for an error found at the given
+     * line and column of a file, both counted from 1.
+     *
+     * @param line The line the error was found on.
+     * @param column The column the error was found at.
+     */
+    public TransportFormatException(int line, int column) {
+        super("line " + line + ", column " + column);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Returns the line of the file on which the error was found.
+     *
+     * @return The line of the error, counted from 1, or 0 if unknown.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the column of the line at which the error was found.
+     *
+     * @return The column of the error, counted from 1, or 0 if unknown.
+     */
+    public int getColumn() {
+        return column;
+    }
 }
@@ -0,0 +1,895 @@
+package network;
+
+import exceptions.TransportFormatException;
+import stops.Stop;
+import stops.StopGraph;
+import utilities.IndexedMinHeap;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A preprocessed index of the connections between stops, answering cheapest
+ * journey queries between pairs of stops without searching the whole network.
+ *
+ * <p>The index is a contraction hierarchy. While it is built, stops are
+ * removed from the graph ("contracted") one at a time, starting with the least
+ * important. Whenever removing a stop would make some cheapest path between
+ * two of its remaining neighbours longer, a shortcut connection between those
+ * neighbours is added, standing in for the path through the removed stop. A
+ * query then searches forwards from the origin and backwards from the
+ * destination, each only following connections towards stops contracted
+ * later, and the two searches meet at the most important stop on the
+ * cheapest journey. Each search only visits a small part of the network, and
+ * stops which the search can already reach more cheaply through a more
+ * important stop are not searched onwards from.
+ *
+ * <p>Shortcuts remember the two connections they replace, so the journeys
+ * returned contain every stop actually visited, as with {@link RoutePlanner}.
+ *
+ * <p>The index is built from a snapshot of the network (see
+ * {@link StopGraph}), and does not change when the network changes. It can be
+ * saved to a file (see {@link #save(String)}) and loaded again later (see
+ * {@link #load(String, Collection)}), so it does not need to be rebuilt every
+ * time a network is loaded.
+ */
+public class ContractionHierarchy {
+    // the number identifying a saved hierarchy file
+    private static final int MAGIC = 0x43484946;
+
+    // the version of the saved hierarchy format
+    private static final int VERSION = 1;
+
+    // the index used for missing stops and connections
+    private static final int NONE = -1;
+
+    // the largest number of stops a witness search settles before giving up,
+    // when contracting a stop and when only estimating its priority
+    private static final int WITNESS_LIMIT = 500;
+    private static final int ESTIMATE_WITNESS_LIMIT = 50;
+
+    // the stops in the hierarchy, by index
+    private Stop[] stops;
+
+    // the index of each stop in the hierarchy
+    private Map<Stop, Integer> indices;
+
+    // the position of each stop in the contraction order
+    private int[] ranks;
+
+    // the endpoints and cost of every connection, including shortcuts
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int[] edgeWeights;
+
+    // the two connections replaced by each shortcut, or -1 for connections
+    // between neighbouring stops
+    private int[] edgeFirst;
+    private int[] edgeSecond;
+
+    // the number of connections, including shortcuts
+    private int edgeCount;
+
+    // the connections from each stop to stops contracted after it
+    private int[] upOffsets;
+    private int[] upEdges;
+
+    // the connections to each stop from stops contracted after it
+    private int[] downOffsets;
+    private int[] downEdges;
+
+    // the state of the forward and backward searches of a query, where the
+    // cost and previous connection of a stop are only valid if its stamp
+    // matches the current query
+    private int[] forwardCosts;
+    private int[] forwardEdges;
+    private int[] forwardStamps;
+    private int[] backwardCosts;
+    private int[] backwardEdges;
+    private int[] backwardStamps;
+    private int stamp;
+    private IndexedMinHeap forwardHeap;
+    private IndexedMinHeap backwardHeap;
+
+    /**
+     * Builds a new ContractionHierarchy over the stops and connections in the
+     * given graph.
+     *
+     * <p>Building the hierarchy takes considerably longer than answering a
+     * single query, and is intended to be done once for a network.
+     *
+     * @param graph The graph of the stops to build the hierarchy over.
+     */
+    public ContractionHierarchy(StopGraph graph) {
+        int size = graph.size();
+        this.stops = new Stop[size];
+        for (int i = 0; i < size; i++) {
+            this.stops[i] = graph.getStop(i);
+        }
+
+        this.edgeFrom = new int[16];
+        this.edgeTo = new int[16];
+        this.edgeWeights = new int[16];
+        this.edgeFirst = new int[16];
+        this.edgeSecond = new int[16];
+        this.edgeCount = 0;
+
+        new Contraction(graph).run();
+        prepareQueries();
+    }
+
+    /*
+     * Creates a hierarchy from previously built parts (see load).
+     */
+    private ContractionHierarchy(Stop[] stops, int[] ranks, int[] edgeFrom,
+                                 int[] edgeTo, int[] edgeWeights,
+                                 int[] edgeFirst, int[] edgeSecond) {
+        this.stops = stops;
+        this.ranks = ranks;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeights = edgeWeights;
+        this.edgeFirst = edgeFirst;
+        this.edgeSecond = edgeSecond;
+        this.edgeCount = edgeFrom.length;
+        prepareQueries();
+    }
+
+    /**
+     * Returns the number of stops in this hierarchy.
+     *
+     * @return The number of stops.
+     */
+    public int size() {
+        return this.stops.length;
+    }
+
+    /**
+     * Returns the number of shortcuts added to this hierarchy while it was
+     * built.
+     *
+     * @return The number of shortcuts.
+     */
+    public int getShortcutCount() {
+        int shortcuts = 0;
+        for (int edge = 0; edge < this.edgeCount; edge++) {
+            if (this.edgeFirst[edge] != NONE) {
+                shortcuts++;
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Returns the cheapest journey from the given origin to the given
+     * destination.
+     *
+     * <p>The journey found has the same cost as one found by
+     * {@link RoutePlanner#plan(Stop, Stop)} over the network the hierarchy
+     * was built from. If the origin and destination are the same stop, the
+     * journey only contains that stop, at a cost of 0.
+     *
+     * @param origin The stop to start the journey from.
+     * @param destination The stop to finish the journey at.
+     * @return The cheapest journey between the stops, or null if either stop
+     * is null or not in this hierarchy, or there is no path from the origin to
+     * the destination.
+     */
+    public synchronized Journey query(Stop origin, Stop destination) {
+        int source = indexOf(origin);
+        int target = indexOf(destination);
+        if (source == NONE || target == NONE) {
+            return null;
+        }
+        if (source == target) {
+            return new Journey(Collections.singletonList(origin), 0);
+        }
+
+        this.stamp++;
+        reach(this.forwardCosts, this.forwardEdges, this.forwardStamps,
+                source, 0, NONE);
+        this.forwardHeap.offer(source, 0);
+        reach(this.backwardCosts, this.backwardEdges, this.backwardStamps,
+                target, 0, NONE);
+        this.backwardHeap.offer(target, 0);
+
+        int best = Integer.MAX_VALUE;
+        int meeting = NONE;
+        while (!this.forwardHeap.isEmpty() || !this.backwardHeap.isEmpty()) {
+            boolean forward = !this.forwardHeap.isEmpty()
+                    && (this.backwardHeap.isEmpty()
+                    || this.forwardHeap.peekKey()
+                    <= this.backwardHeap.peekKey());
+            IndexedMinHeap heap = forward ? this.forwardHeap
+                    : this.backwardHeap;
+            if (heap.peekKey() >= best) {
+                break;
+            }
+
+            int current = heap.poll();
+            int cost = forward ? this.forwardCosts[current]
+                    : this.backwardCosts[current];
+
+            // the searches have met at the current stop
+            int other = forward ? costOf(this.backwardCosts,
+                    this.backwardStamps, current) : costOf(this.forwardCosts,
+                    this.forwardStamps, current);
+            if (other != Integer.MAX_VALUE && cost + other < best) {
+                best = cost + other;
+                meeting = current;
+            }
+
+            if (isStalled(current, cost, forward)) {
+                continue;
+            }
+
+            if (forward) {
+                for (int i = this.upOffsets[current];
+                     i < this.upOffsets[current + 1]; i++) {
+                    int edge = this.upEdges[i];
+                    relax(this.forwardCosts, this.forwardEdges,
+                            this.forwardStamps, this.forwardHeap,
+                            this.edgeTo[edge], cost + this.edgeWeights[edge],
+                            edge);
+                }
+            } else {
+                for (int i = this.downOffsets[current];
+                     i < this.downOffsets[current + 1]; i++) {
+                    int edge = this.downEdges[i];
+                    relax(this.backwardCosts, this.backwardEdges,
+                            this.backwardStamps, this.backwardHeap,
+                            this.edgeFrom[edge], cost + this.edgeWeights[edge],
+                            edge);
+                }
+            }
+        }
+        this.forwardHeap.clear();
+        this.backwardHeap.clear();
+
+        if (meeting == NONE) {
+            return null;
+        }
+        return new Journey(unpackPath(source, meeting, target), best);
+    }
+
+    /**
+     * Saves this hierarchy to the file with the given name.
+     *
+     * <p>The stops of the hierarchy are recorded by their string
+     * representation (see {@link Stop#toString()}), and are matched up with
+     * the stops of a network when the file is loaded again.
+     *
+     * @param filename The name of the file to save the hierarchy to.
+     * @throws IOException If any IO exceptions occur whilst trying to write to
+     *         the file, or if the filename is null.
+     */
+    public void save(String filename) throws IOException {
+        if (filename == null) {
+            throw new IOException();
+        }
+
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeInt(this.stops.length);
+            for (int i = 0; i < this.stops.length; i++) {
+                output.writeUTF(this.stops[i].toString());
+                output.writeInt(this.ranks[i]);
+            }
+
+            output.writeInt(this.edgeCount);
+            for (int edge = 0; edge < this.edgeCount; edge++) {
+                output.writeInt(this.edgeFrom[edge]);
+                output.writeInt(this.edgeTo[edge]);
+                output.writeInt(this.edgeWeights[edge]);
+                output.writeInt(this.edgeFirst[edge]);
+                output.writeInt(this.edgeSecond[edge]);
+            }
+        }
+    }
+
+    /**
+     * Loads a hierarchy previously saved to the file with the given name
+     * (see {@link #save(String)}), over the given stops.
+     *
+     * <p>Each stop recorded in the file is matched with the first of the
+     * given stops with the same string representation. The hierarchy is only
+     * valid if the connections between the stops have not changed since it
+     * was saved.
+     *
+     * @param filename The name of the file to load the hierarchy from.
+     * @param stops The stops of the network the hierarchy was built for.
+     * @return The loaded hierarchy.
+     * @throws IOException If any IO exceptions occur whilst trying to read
+     *         from the file, or if the filename is null.
+     * @throws TransportFormatException If the file is not a saved hierarchy,
+     *         was saved in an unsupported version, refers to a stop which is
+     *         not one of the given stops, or is otherwise incorrectly
+     *         formatted.
+     */
+    public static ContractionHierarchy load(String filename,
+                                            Collection<Stop> stops)
+            throws IOException, TransportFormatException {
+        if (filename == null) {
+            throw new IOException();
+        }
+
+        Map<String, Stop> byName = new HashMap<>();
+        for (Stop stop : stops) {
+            byName.putIfAbsent(stop.toString(), stop);
+        }
+
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new TransportFormatException();
+            }
+
+            int size = input.readInt();
+            if (size < 0) {
+                throw new TransportFormatException();
+            }
+            Stop[] loaded = new Stop[size];
+            int[] ranks = new int[size];
+            for (int i = 0; i < size; i++) {
+                loaded[i] = byName.get(input.readUTF());
+                ranks[i] = input.readInt();
+                if (loaded[i] == null) {
+                    throw new TransportFormatException();
+                }
+            }
+
+            int edges = input.readInt();
+            if (edges < 0) {
+                throw new TransportFormatException();
+            }
+            int[] from = new int[edges];
+            int[] to = new int[edges];
+            int[] weights = new int[edges];
+            int[] first = new int[edges];
+            int[] second = new int[edges];
+            for (int edge = 0; edge < edges; edge++) {
+                from[edge] = input.readInt();
+                to[edge] = input.readInt();
+                weights[edge] = input.readInt();
+                first[edge] = input.readInt();
+                second[edge] = input.readInt();
+
+                if (from[edge] < 0 || from[edge] >= size || to[edge] < 0
+                        || to[edge] >= size || first[edge] < NONE
+                        || first[edge] >= edges || second[edge] < NONE
+                        || second[edge] >= edges
+                        || (first[edge] == NONE) != (second[edge] == NONE)) {
+                    throw new TransportFormatException();
+                }
+            }
+            if (input.read() != NONE || !isValid(ranks, from, to, first,
+                    second)) {
+                throw new TransportFormatException();
+            }
+
+            return new ContractionHierarchy(loaded, ranks, from, to, weights,
+                    first, second);
+        } catch (EOFException e) {
+            throw new TransportFormatException();
+        }
+    }
+
+    /*
+     * Returns whether the given ranks are a valid contraction order, and each
+     * shortcut replaces two connections which meet at a stop contracted
+     * before either end of the shortcut (so unpacking always finishes).
+     */
+    private static boolean isValid(int[] ranks, int[] from, int[] to,
+                                   int[] first, int[] second) {
+        boolean[] used = new boolean[ranks.length];
+        for (int rank : ranks) {
+            if (rank < 0 || rank >= ranks.length || used[rank]) {
+                return false;
+            }
+            used[rank] = true;
+        }
+
+        for (int edge = 0; edge < from.length; edge++) {
+            if (first[edge] == NONE) {
+                continue;
+            }
+            int middle = to[first[edge]];
+            if (from[first[edge]] != from[edge]
+                    || from[second[edge]] != middle
+                    || to[second[edge]] != to[edge]
+                    || ranks[middle] >= ranks[from[edge]]
+                    || ranks[middle] >= ranks[to[edge]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Returns the index of the given stop, or -1 if it is null or not in the
+     * hierarchy.
+     */
+    private int indexOf(Stop stop) {
+        if (stop == null) {
+            return NONE;
+        }
+        Integer index = this.indices.get(stop);
+        return index == null ? NONE : index;
+    }
+
+    /*
+     * Builds the structures used to answer queries from the stops, ranks and
+     * connections of the hierarchy.
+     */
+    private void prepareQueries() {
+        int size = this.stops.length;
+        this.indices = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            this.indices.putIfAbsent(this.stops[i], i);
+        }
+
+        // each connection is searched from whichever end was contracted first
+        this.upOffsets = new int[size + 1];
+        this.downOffsets = new int[size + 1];
+        for (int edge = 0; edge < this.edgeCount; edge++) {
+            int from = this.edgeFrom[edge];
+            int to = this.edgeTo[edge];
+            if (this.ranks[from] < this.ranks[to]) {
+                this.upOffsets[from + 1]++;
+            } else if (this.ranks[from] > this.ranks[to]) {
+                this.downOffsets[to + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            this.upOffsets[i + 1] += this.upOffsets[i];
+            this.downOffsets[i + 1] += this.downOffsets[i];
+        }
+
+        this.upEdges = new int[this.upOffsets[size]];
+        this.downEdges = new int[this.downOffsets[size]];
+        int[] upFilled = new int[size];
+        int[] downFilled = new int[size];
+        for (int edge = 0; edge < this.edgeCount; edge++) {
+            int from = this.edgeFrom[edge];
+            int to = this.edgeTo[edge];
+            if (this.ranks[from] < this.ranks[to]) {
+                this.upEdges[this.upOffsets[from] + upFilled[from]++] = edge;
+            } else if (this.ranks[from] > this.ranks[to]) {
+                this.downEdges[this.downOffsets[to] + downFilled[to]++] = edge;
+            }
+        }
+
+        this.forwardCosts = new int[size];
+        this.forwardEdges = new int[size];
+        this.forwardStamps = new int[size];
+        this.backwardCosts = new int[size];
+        this.backwardEdges = new int[size];
+        this.backwardStamps = new int[size];
+        this.stamp = 0;
+        this.forwardHeap = new IndexedMinHeap(size);
+        this.backwardHeap = new IndexedMinHeap(size);
+    }
+
+    /*
+     * Returns the cost recorded for the given stop in the current query, or
+     * Integer.MAX_VALUE if it has not been reached.
+     */
+    private int costOf(int[] costs, int[] stamps, int stop) {
+        return stamps[stop] == this.stamp ? costs[stop] : Integer.MAX_VALUE;
+    }
+
+    /*
+     * Records the given cost and previous connection for the given stop in
+     * the current query.
+     */
+    private void reach(int[] costs, int[] edges, int[] stamps, int stop,
+                       int cost, int edge) {
+        costs[stop] = cost;
+        edges[stop] = edge;
+        stamps[stop] = this.stamp;
+    }
+
+    /*
+     * Records the given cost and previous connection for the given stop, and
+     * adds it to the heap, if the cost is cheaper than any found before.
+     */
+    private void relax(int[] costs, int[] edges, int[] stamps,
+                       IndexedMinHeap heap, int stop, int cost, int edge) {
+        if (cost < costOf(costs, stamps, stop)) {
+            reach(costs, edges, stamps, stop, cost, edge);
+            heap.offer(stop, cost);
+        }
+    }
+
+    /*
+     * Returns whether the given stop can already be reached more cheaply than
+     * the given cost through a stop contracted after it, in which case its
+     * connections do not need to be followed by the search in the given
+     * direction.
+     */
+    private boolean isStalled(int stop, int cost, boolean forward) {
+        if (forward) {
+            for (int i = this.downOffsets[stop];
+                 i < this.downOffsets[stop + 1]; i++) {
+                int edge = this.downEdges[i];
+                int other = costOf(this.forwardCosts, this.forwardStamps,
+                        this.edgeFrom[edge]);
+                if (other != Integer.MAX_VALUE
+                        && other + this.edgeWeights[edge] < cost) {
+                    return true;
+                }
+            }
+        } else {
+            for (int i = this.upOffsets[stop]; i < this.upOffsets[stop + 1];
+                 i++) {
+                int edge = this.upEdges[i];
+                int other = costOf(this.backwardCosts, this.backwardStamps,
+                        this.edgeTo[edge]);
+                if (other != Integer.MAX_VALUE
+                        && other + this.edgeWeights[edge] < cost) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Returns every stop visited on the cheapest journey found from the source
+     * to the target through the given meeting stop, unpacking shortcuts into
+     * the connections they replace.
+     */
+    private List<Stop> unpackPath(int source, int meeting, int target) {
+        List<Integer> edges = new ArrayList<>();
+        for (int current = meeting; current != source;
+             current = this.edgeFrom[this.forwardEdges[current]]) {
+            edges.add(this.forwardEdges[current]);
+        }
+        Collections.reverse(edges);
+        for (int current = meeting; current != target;
+             current = this.edgeTo[this.backwardEdges[current]]) {
+            edges.add(this.backwardEdges[current]);
+        }
+
+        List<Stop> path = new ArrayList<>();
+        path.add(this.stops[source]);
+        int[] pending = new int[16];
+        for (int edge : edges) {
+            int top = 0;
+            pending[top++] = edge;
+            while (top > 0) {
+                int current = pending[--top];
+                if (this.edgeFirst[current] == NONE) {
+                    path.add(this.stops[this.edgeTo[current]]);
+                    continue;
+                }
+                if (top + 2 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+                // the second half is unpacked after the first
+                pending[top++] = this.edgeSecond[current];
+                pending[top++] = this.edgeFirst[current];
+            }
+        }
+        return path;
+    }
+
+    /*
+     * Adds a connection to the hierarchy, returning its index.
+     */
+    private int addEdge(int from, int to, int weight, int first, int second) {
+        if (this.edgeCount == this.edgeFrom.length) {
+            int capacity = this.edgeCount * 2;
+            this.edgeFrom = Arrays.copyOf(this.edgeFrom, capacity);
+            this.edgeTo = Arrays.copyOf(this.edgeTo, capacity);
+            this.edgeWeights = Arrays.copyOf(this.edgeWeights, capacity);
+            this.edgeFirst = Arrays.copyOf(this.edgeFirst, capacity);
+            this.edgeSecond = Arrays.copyOf(this.edgeSecond, capacity);
+        }
+
+        int edge = this.edgeCount++;
+        this.edgeFrom[edge] = from;
+        this.edgeTo[edge] = to;
+        this.edgeWeights[edge] = weight;
+        this.edgeFirst[edge] = first;
+        this.edgeSecond[edge] = second;
+        return edge;
+    }
+
+    /*
+     * The state used while contracting the stops of a hierarchy, which is
+     * discarded once every stop has been contracted.
+     */
+    private class Contraction {
+        // the connections leaving and entering each stop, by index
+        private int[][] outgoing;
+        private int[] outgoingCounts;
+        private int[][] incoming;
+        private int[] incomingCounts;
+
+        // whether each stop has been contracted
+        private boolean[] contracted;
+
+        // the number of neighbours of each stop which have been contracted
+        private int[] contractedNeighbours;
+
+        // the state of witness searches, where a cost is only valid if its
+        // stamp matches the current search
+        private int[] witnessCosts;
+        private int[] witnessStamps;
+        private int witnessStamp;
+        private IndexedMinHeap witnessHeap;
+
+        /*
+         * Prepares to contract the stops of the given graph, adding a
+         * connection to the hierarchy for each connection in the graph.
+         */
+        Contraction(StopGraph graph) {
+            int size = graph.size();
+            this.outgoing = new int[size][];
+            this.outgoingCounts = new int[size];
+            this.incoming = new int[size][];
+            this.incomingCounts = new int[size];
+            for (int i = 0; i < size; i++) {
+                this.outgoing[i] = new int[4];
+                this.incoming[i] = new int[4];
+            }
+            this.contracted = new boolean[size];
+            this.contractedNeighbours = new int[size];
+            this.witnessCosts = new int[size];
+            this.witnessStamps = new int[size];
+            this.witnessStamp = 0;
+            this.witnessHeap = new IndexedMinHeap(size);
+
+            for (int from = 0; from < size; from++) {
+                for (int edge = graph.neighbourStart(from);
+                     edge < graph.neighbourEnd(from); edge++) {
+                    int to = graph.neighbourAt(edge);
+                    if (to != from) {
+                        connect(from, to, graph.costAt(edge), NONE, NONE);
+                    }
+                }
+            }
+        }
+
+        /*
+         * Contracts every stop, least important first, recording the order
+         * in which they were contracted.
+         */
+        void run() {
+            int size = this.contracted.length;
+            ranks = new int[size];
+            IndexedMinHeap order = new IndexedMinHeap(size);
+            for (int stop = 0; stop < size; stop++) {
+                order.offer(stop, priorityOf(stop));
+            }
+
+            int rank = 0;
+            while (!order.isEmpty()) {
+                int stop = order.poll();
+
+                // the priority may have changed since it was last computed
+                int priority = priorityOf(stop);
+                if (!order.isEmpty() && priority > order.peekKey()) {
+                    order.offer(stop, priority);
+                    continue;
+                }
+
+                contract(stop, false);
+                this.contracted[stop] = true;
+                ranks[stop] = rank++;
+                disconnect(stop);
+
+                // contracting a stop changes the priorities of its neighbours
+                for (int i = 0; i < this.outgoingCounts[stop]; i++) {
+                    updatePriority(order, edgeTo[this.outgoing[stop][i]]);
+                }
+                for (int i = 0; i < this.incomingCounts[stop]; i++) {
+                    updatePriority(order, edgeFrom[this.incoming[stop][i]]);
+                }
+            }
+        }
+
+        /*
+         * Recomputes the priority of the given stop, if it has not yet been
+         * contracted.
+         */
+        private void updatePriority(IndexedMinHeap order, int stop) {
+            if (!this.contracted[stop]) {
+                order.update(stop, priorityOf(stop));
+            }
+        }
+
+        /*
+         * Returns how desirable it is to contract the given stop next, where
+         * lower values are contracted first. Stops which would need fewer
+         * shortcuts than the connections they remove, and whose neighbours
+         * have not been contracted, are preferred.
+         */
+        private int priorityOf(int stop) {
+            int removed = 0;
+            for (int i = 0; i < this.outgoingCounts[stop]; i++) {
+                if (!this.contracted[edgeTo[this.outgoing[stop][i]]]) {
+                    removed++;
+                }
+            }
+            for (int i = 0; i < this.incomingCounts[stop]; i++) {
+                if (!this.contracted[edgeFrom[this.incoming[stop][i]]]) {
+                    removed++;
+                }
+            }
+            return contract(stop, true) - removed
+                    + this.contractedNeighbours[stop];
+        }
+
+        /*
+         * Adds the shortcuts needed to contract the given stop, returning how
+         * many were needed. If simulating, the shortcuts are only counted.
+         */
+        private int contract(int stop, boolean simulate) {
+            int shortcuts = 0;
+
+            for (int i = 0; i < this.incomingCounts[stop]; i++) {
+                int first = this.incoming[stop][i];
+                int from = edgeFrom[first];
+                if (this.contracted[from]) {
+                    continue;
+                }
+
+                int limit = 0;
+                for (int j = 0; j < this.outgoingCounts[stop]; j++) {
+                    int second = this.outgoing[stop][j];
+                    if (!this.contracted[edgeTo[second]]) {
+                        limit = Math.max(limit, edgeWeights[first]
+                                + edgeWeights[second]);
+                    }
+                }
+                searchWitnesses(from, stop, limit,
+                        simulate ? ESTIMATE_WITNESS_LIMIT : WITNESS_LIMIT);
+
+                for (int j = 0; j < this.outgoingCounts[stop]; j++) {
+                    int second = this.outgoing[stop][j];
+                    int to = edgeTo[second];
+                    int cost = edgeWeights[first] + edgeWeights[second];
+                    if (this.contracted[to] || to == from
+                            || witnessCost(to) <= cost) {
+                        continue;
+                    }
+
+                    shortcuts++;
+                    if (!simulate) {
+                        connect(from, to, cost, first, second);
+                    }
+                }
+
+                if (!simulate) {
+                    this.contractedNeighbours[from]++;
+                }
+            }
+
+            if (!simulate) {
+                for (int j = 0; j < this.outgoingCounts[stop]; j++) {
+                    this.contractedNeighbours[edgeTo[this.outgoing[stop][j]]]++;
+                }
+            }
+            return shortcuts;
+        }
+
+        /*
+         * Searches for the cheapest paths from the given stop which avoid the
+         * stop being contracted, up to the given cost, settling at most the
+         * given number of stops.
+         */
+        private void searchWitnesses(int source, int avoided, int limit,
+                                     int settleLimit) {
+            this.witnessStamp++;
+            this.witnessCosts[source] = 0;
+            this.witnessStamps[source] = this.witnessStamp;
+            this.witnessHeap.offer(source, 0);
+
+            int settled = 0;
+            while (!this.witnessHeap.isEmpty()
+                    && this.witnessHeap.peekKey() <= limit
+                    && settled < settleLimit) {
+                int current = this.witnessHeap.poll();
+                settled++;
+
+                for (int i = 0; i < this.outgoingCounts[current]; i++) {
+                    int edge = this.outgoing[current][i];
+                    int next = edgeTo[edge];
+                    int cost = this.witnessCosts[current] + edgeWeights[edge];
+                    if (next != avoided && !this.contracted[next]
+                            && cost < witnessCost(next)) {
+                        this.witnessCosts[next] = cost;
+                        this.witnessStamps[next] = this.witnessStamp;
+                        this.witnessHeap.offer(next, cost);
+                    }
+                }
+            }
+            this.witnessHeap.clear();
+        }
+
+        /*
+         * Returns the cost found to the given stop by the current witness
+         * search, or Integer.MAX_VALUE if it was not reached.
+         */
+        private int witnessCost(int stop) {
+            return this.witnessStamps[stop] == this.witnessStamp
+                    ? this.witnessCosts[stop] : Integer.MAX_VALUE;
+        }
+
+        /*
+         * Removes the connections to and from the given contracted stop from
+         * the lists of its neighbours, so that later searches and
+         * contractions do not have to skip over them.
+         */
+        private void disconnect(int stop) {
+            for (int i = 0; i < this.outgoingCounts[stop]; i++) {
+                int edge = this.outgoing[stop][i];
+                int to = edgeTo[edge];
+                this.incomingCounts[to] = remove(this.incoming[to],
+                        this.incomingCounts[to], edge);
+            }
+            for (int i = 0; i < this.incomingCounts[stop]; i++) {
+                int edge = this.incoming[stop][i];
+                int from = edgeFrom[edge];
+                this.outgoingCounts[from] = remove(this.outgoing[from],
+                        this.outgoingCounts[from], edge);
+            }
+        }
+
+        /*
+         * Removes the given connection from the first count positions of the
+         * given list, returning the new count.
+         */
+        private int remove(int[] edges, int count, int edge) {
+            for (int i = 0; i < count; i++) {
+                if (edges[i] == edge) {
+                    edges[i] = edges[count - 1];
+                    return count - 1;
+                }
+            }
+            return count;
+        }
+
+        /*
+         * Connects the given stops at the given cost, replacing an existing
+         * connection between them if it is more expensive.
+         */
+        private void connect(int from, int to, int weight, int first,
+                             int second) {
+            for (int i = 0; i < this.outgoingCounts[from]; i++) {
+                int edge = this.outgoing[from][i];
+                if (edgeTo[edge] == to) {
+                    if (weight < edgeWeights[edge]) {
+                        edgeWeights[edge] = weight;
+                        edgeFirst[edge] = first;
+                        edgeSecond[edge] = second;
+                    }
+                    return;
+                }
+            }
+
+            int edge = addEdge(from, to, weight, first, second);
+            if (this.outgoingCounts[from] == this.outgoing[from].length) {
+                this.outgoing[from] = Arrays.copyOf(this.outgoing[from],
+                        this.outgoingCounts[from] * 2);
+            }
+            this.outgoing[from][this.outgoingCounts[from]++] = edge;
+            if (this.incomingCounts[to] == this.incoming[to].length) {
+                this.incoming[to] = Arrays.copyOf(this.incoming[to],
+                        this.incomingCounts[to] * 2);
+            }
+            this.incoming[to][this.incomingCounts[to]++] = edge;
+        }
+    }
+}
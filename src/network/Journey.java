@@ -0,0 +1,84 @@
+package network;
+
+import stops.Stop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a journey through the transportation network, from an origin
+ * stop to a destination stop.
+ *
+ * <p>A journey is made up of the sequence of stops visited (including both
+ * the origin and the destination), along with the total cost (in Manhattan
+ * distance) of travelling between them.
+ */
+public class Journey {
+    // the stops visited on the journey, from origin to destination
+    private List<Stop> stops;
+
+    // the total cost of the journey
+    private int cost;
+
+    /**
+     * Creates a new Journey visiting the given stops at the given total cost.
+     *
+     * @param stops The stops visited on the journey, in order, starting with
+     *              the origin and ending with the destination.
+     * @param cost The total cost of the journey.
+     */
+    public Journey(List<Stop> stops, int cost) {
+        this.stops = new ArrayList<>(stops);
+        this.cost = cost;
+    }
+
+    /**
+     * Returns the stops visited on this journey, in order, starting with the
+     * origin and ending with the destination.
+     *
+     * <p>Modifying the returned list should not result in changes to the
+     * internal state of the class.
+     *
+     * @return The stops visited on the journey.
+     */
+    public List<Stop> getStops() {
+        return new ArrayList<>(stops);
+    }
+
+    /**
+     * Returns the total cost (in Manhattan distance) of this journey.
+     *
+     * @return The cost of the journey.
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Creates a string representation of a journey in the format:
+     *
+     * <p>'{stop0}|{stop1}|...|{stopN} ({cost})'
+     *
+     * <p>without the surrounding quotes, and where {stop0}|{stop1}|...|{stopN}
+     * is replaced by the names of the stops visited, and {cost} is replaced by
+     * the total cost of the journey. For example:
+     *
+     * <p>UQ Lakes|City|Valley (12)
+     *
+     * @return A string representation of the journey.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (Stop stop : stops) {
+            builder.append(stop.getName()).append("|");
+        }
+
+        if (!stops.isEmpty()) {
+            builder.deleteCharAt(builder.length() - 1);
+        }
+
+        return builder.append(" (").append(cost).append(")").toString();
+    }
+}
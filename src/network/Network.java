@@ -3,15 +3,36 @@ package network;
 import exceptions.DuplicateStopException;
 import exceptions.TransportFormatException;
 import routes.Route;
+import stops.DestinationTrees;
+import stops.RoutingCache;
+import stops.RoutingMatrix;
+import stops.RoutingStrategy;
+import stops.RoutingTable;
 import stops.Stop;
+import stops.StopGraph;
 import utilities.Writeable;
 import vehicles.PublicTransport;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Represents the transportation network, and manages all of the various
@@ -21,6 +42,9 @@ public class Network {
     // standardises newline characters
     private static final String NEWLINE = System.lineSeparator();
 
+    // the size of the buffers used while saving a network
+    private static final int SAVE_BUFFER_SIZE = 1 << 16;
+
     // all the stops in the network
     private List<Stop> stops;
 
@@ -30,6 +54,26 @@ public class Network {
     // all the routes in the network
     private List<Route> routes;
 
+    // the distinct stops in the network, hashed for duplicate checks
+    private Set<Stop> stopSet;
+
+    // the first stop in the network with each name
+    private Map<String, Stop> stopsByName;
+
+    // the first route in the network with each route number
+    private Map<Integer, Route> routesByNumber;
+
+    // whether routing table maintenance is suspended for the network's stops
+    private boolean routingSuspended;
+
+    // the cache managing the routing tables of the network's stops, or null
+    // if each stop holds its own routing table
+    private RoutingCache routingCache;
+
+    // the index routing passengers at the network's stops, or null if they
+    // are routed using each stop's routing table
+    private DestinationTrees destinationTrees;
+
     /**
      * Creates a new empty Network with no stops, vehicles, or routes.
      */
@@ -37,6 +81,12 @@ public class Network {
         this.stops = new ArrayList<>();
         this.vehicles = new ArrayList<>();
         this.routes = new ArrayList<>();
+        this.stopSet = new HashSet<>();
+        this.stopsByName = new HashMap<>();
+        this.routesByNumber = new HashMap<>();
+        this.routingSuspended = false;
+        this.routingCache = null;
+        this.destinationTrees = null;
     }
 
     /**
@@ -85,6 +135,17 @@ public class Network {
      * <p>The Network object created should have the stops, routes, and vehicles
      * contained in the given file.
      *
+     * <p>Routing maintenance is suspended while the file is being read (see
+     * {@link #suspendRouting()}), and the routing tables of all the stops are
+     * computed once the whole network has been loaded.
+     *
+     * <p>The file is read in a single pass. The lines of each section are
+     * decoded in parallel, in chunks, on the common {@link ForkJoinPool}, and
+     * then linked into the network in the order they appear in the file. The
+     * exception thrown for an incorrectly formatted file gives the line and
+     * column at which the first error in the file was found (see
+     * {@link TransportFormatException#getLine()}).
+     *
      * @param filename The name of the file to load the network from.
      * @throws IOException If any IO exceptions occur whilst trying to read from
      *         the file, or if the filename is null.
@@ -110,55 +171,49 @@ public class Network {
      */
     public Network(String filename) throws IOException,
             TransportFormatException {
+        this(filename, null);
+    }
+
+    /**
+     * Creates a new Network from information contained in the file indicated by
+     * the given filename, as described in {@link #Network(String)}, with the
+     * routing tables of all its stops managed by the given routing cache.
+     *
+     * <p>No routing tables are computed while the file is loaded. Instead,
+     * each stop's table is computed on demand by the cache (see
+     * {@link #setRoutingCache(RoutingCache)}). If the given cache is null, the
+     * network is loaded as described in {@link #Network(String)}.
+     *
+     * @param filename The name of the file to load the network from.
+     * @param cache The cache to manage the routing tables of the stops.
+     * @throws IOException If any IO exceptions occur whilst trying to read from
+     *         the file, or if the filename is null.
+     * @throws TransportFormatException If the file is incorrectly formatted,
+     *         as described in {@link #Network(String)}.
+     */
+    public Network(String filename, RoutingCache cache) throws IOException,
+            TransportFormatException {
         this();
+        this.routingCache = cache;
         if (filename == null) {
             throw new IOException();
         }
 
-        // create a file reader
-        BufferedReader reader = new BufferedReader(new FileReader(filename));
-        List<String> lines = new ArrayList<>();
-        String line;
-
-        // while the end of file has not been reached.
-        while ((line = reader.readLine()) != null) {
-            lines.add(line);
-        }
-        reader.close();
-        Iterator<String> elements = lines.iterator();
-
-        try {
-            // read the stops
-            stops = new ArrayList<>();
-            int stopCount = Integer.parseInt(elements.next().trim());
-            for (int i = 0; i < stopCount; i++) {
-                String stop = elements.next();
-                stops.add(Stop.decode(stop));
-            }
-
-            // read the routes
-            routes = new ArrayList<>();
-            int routeCount = Integer.parseInt(elements.next().trim());
-            for (int i = 0; i < routeCount; i++) {
-                String route = elements.next();
-                routes.add(Route.decode(route, stops));
-            }
-
-            // read the public transport
-            vehicles = new ArrayList<>();
-            int vehicleCount = Integer.parseInt(elements.next().trim());
-            for (int i = 0; i < vehicleCount; i++) {
-                String vehicle = elements.next();
-                vehicles.add(PublicTransport.decode(vehicle, routes));
-            }
+        // read the file in a single pass, building each section in turn
+        suspendRouting();
+        try (Reader reader = new FileReader(filename)) {
+            NetworkReader parser = new NetworkReader(reader,
+                    ForkJoinPool.commonPool());
+            stops = parser.readStops(this::prepareRouting);
+            routes = parser.readRoutes();
+            vehicles = parser.readVehicles();
 
             // there should be no extra lines in the file
-            if (elements.hasNext()) {
-                throw new TransportFormatException();
-            }
-        } catch (NoSuchElementException | NumberFormatException e) {
-            throw new TransportFormatException();
+            parser.readEnd();
         }
+        indexAll();
+
+        resumeRouting();
     }
 
     /**
@@ -174,11 +229,12 @@ public class Network {
             return;
         }
 
-        if (stops.contains(stop)) {
+        if (!stopSet.add(stop)) {
             throw new DuplicateStopException();
-        } else {
-            stops.add(stop);
         }
+        prepareRouting(stop);
+        stops.add(stop);
+        stopsByName.putIfAbsent(stop.getName(), stop);
     }
 
     /**
@@ -187,25 +243,287 @@ public class Network {
      * <p>If any of the stops in the given list are null, none of them should be
      * added (i.e. either all of the stops are added, or none are).
      *
+     * <p>The list is checked in a single pass against a hashed index of the
+     * network's stops, so adding a list of stops takes time proportional to
+     * the length of the list rather than the size of the network.
+     *
      * @param stops The stops to add to the network.
      * @throws DuplicateStopException If any of the stops in the given list
-     * already exist in the network.
+     * already exist in the network, or appear more than once in the list.
      */
     public void addStops(java.util.List<Stop> stops) throws
             DuplicateStopException {
+        Set<Stop> added = new HashSet<>();
+        boolean duplicate = false;
         for (Stop stop : stops) {
             if (stop == null) {
                 return;
             }
+            if (!added.add(stop) || stopSet.contains(stop)) {
+                duplicate = true;
+            }
+        }
+        if (duplicate) {
+            throw new DuplicateStopException();
         }
 
+        this.stopSet.addAll(added);
         for (Stop stop : stops) {
-            if (this.stops.contains(stop)) {
-                throw new DuplicateStopException();
+            prepareRouting(stop);
+            this.stopsByName.putIfAbsent(stop.getName(), stop);
+        }
+        this.stops.addAll(stops);
+    }
+
+    /**
+     * Removes the given stop from the network, closing it.
+     *
+     * <p>The stop is removed from every route it is on (see
+     * {@link Route#removeStop(Stop)}), and disconnected from any remaining
+     * neighbours in both directions, so that no passengers are routed to or
+     * through it. The routing of the rest of the network is repaired
+     * incrementally (see {@link RoutingTable#removeNeighbour(Stop)}).
+     *
+     * <p>A stop which is occupied cannot be closed, and the network is left
+     * unchanged. A stop is occupied if any passengers are waiting at it
+     * (including those counted, see {@link Stop#waitingCount()}), or if any
+     * vehicle is at it, either recorded as having arrived (see
+     * {@link Stop#getVehicles()}) or with it as its current stop. Passengers
+     * on board vehicles who were travelling to the closed stop leave them at
+     * the next stop they arrive at (see
+     * {@link Stop#transportArrive(PublicTransport)}).
+     *
+     * <p>If the given stop is equal to, but not the same object as, a stop in
+     * the network, the stop held by the network is the one closed. Stops are
+     * taken to be connected in both directions, as routes connect them, so
+     * only the neighbours of the closed stop are disconnected from it, rather
+     * than every stop in the network being visited.
+     *
+     * @param stop The stop to remove from the network.
+     * @return True if the stop was removed, or false if it is null, was not
+     * in the network, or is occupied.
+     */
+    public boolean removeStop(Stop stop) {
+        Stop held = heldInstanceOf(stop);
+        if (held == null || isOccupied(held)) {
+            return false;
+        }
+        for (int i = 0; i < stops.size(); i++) {
+            if (stops.get(i) == held) {
+                stops.remove(i);
+                break;
             }
         }
+        reindex(held);
 
-        this.stops.addAll(stops);
+        for (Route route : held.getRoutes()) {
+            route.removeStop(held);
+        }
+
+        for (Stop neighbour : held.getNeighbours()) {
+            held.removeNeighbouringStop(neighbour);
+            neighbour.removeNeighbouringStop(held);
+        }
+        return true;
+    }
+
+    /*
+     * Returns the stop held by this network which is the given stop, or is
+     * equal to it if the network does not hold the given stop itself, or null
+     * if the network holds no such stop.
+     */
+    private Stop heldInstanceOf(Stop stop) {
+        if (stop == null || !stopSet.contains(stop)) {
+            return null;
+        }
+        if (stopsByName.get(stop.getName()) == stop) {
+            return stop;
+        }
+
+        Stop equal = null;
+        for (Stop held : stops) {
+            if (held == stop) {
+                return held;
+            }
+            if (equal == null && held.equals(stop)) {
+                equal = held;
+            }
+        }
+        return equal;
+    }
+
+    /*
+     * Returns whether any passengers are waiting at the given stop, or any
+     * vehicle on one of its routes is at it.
+     */
+    private static boolean isOccupied(Stop stop) {
+        if (stop.waitingCount() > 0 || !stop.getVehicles().isEmpty()) {
+            return true;
+        }
+        for (Route route : stop.getRoutes()) {
+            for (PublicTransport vehicle : route.getTransports()) {
+                if (stop.equals(vehicle.getCurrentStop())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Suspends routing table maintenance for all the stops in this network.
+     *
+     * <p>While routing is suspended, stops and routes can be added to the
+     * network without each new neighbour being synchronised throughout the
+     * network (see {@link RoutingTable#suspend()}). Any stops added to the
+     * network while routing is suspended are also suspended.
+     *
+     * <p>Routing tables should not be relied upon until
+     * {@link #resumeRouting()} is called. If routing is already suspended, the
+     * method does nothing. Stops managed by a routing cache are not affected.
+     */
+    public void suspendRouting() {
+        if (routingSuspended) {
+            return;
+        }
+
+        routingSuspended = true;
+        for (Stop stop : stops) {
+            prepareRouting(stop);
+        }
+    }
+
+    /**
+     * Resumes routing table maintenance for all the stops in this network,
+     * computing their routing tables once for all the changes made while
+     * routing was suspended (see {@link RoutingTable#resumeAll}).
+     *
+     * <p>Once resumed, changes to the network are synchronised eagerly again.
+     * If routing is not currently suspended, the method does nothing.
+     */
+    public void resumeRouting() {
+        resumeRouting(RoutingStrategy.DISTANCE_VECTOR);
+    }
+
+    /**
+     * Resumes routing table maintenance for all the stops in this network,
+     * computing their routing tables with the given strategy (see
+     * {@link RoutingTable#resumeAll(java.util.Collection, RoutingStrategy)}).
+     *
+     * <p>If routing is not currently suspended, or the given strategy is
+     * null, the method does nothing.
+     *
+     * @param strategy The strategy used to compute the routing tables.
+     */
+    public void resumeRouting(RoutingStrategy strategy) {
+        if (!routingSuspended || strategy == null) {
+            return;
+        }
+
+        routingSuspended = false;
+        RoutingTable.resumeAll(stops, strategy);
+    }
+
+    /**
+     * Recomputes the routing tables of every stop in this network in
+     * parallel, using the given number of threads (see
+     * {@link RoutingTable#populateAll(java.util.Collection, int)}).
+     *
+     * <p>If routing is currently suspended, it is resumed, as every routing
+     * table is complete once this method returns. Stops managed by a routing
+     * cache are not affected.
+     *
+     * @param parallelism The number of threads to compute the tables with.
+     */
+    public void computeRouting(int parallelism) {
+        routingSuspended = false;
+        RoutingTable.populateAll(stops, parallelism);
+    }
+
+    /**
+     * Returns whether routing table maintenance is currently suspended for
+     * this network.
+     *
+     * @return True if routing is suspended, false otherwise.
+     */
+    public boolean isRoutingSuspended() {
+        return routingSuspended;
+    }
+
+    /**
+     * Moves the routing information of every stop in this network into a
+     * single compact routing matrix (see {@link RoutingMatrix#compact(List)}).
+     *
+     * <p>Each stop's routing table becomes a view over the matrix, so routing
+     * information for large networks can be held without a separate entry
+     * object for every pair of stops. Stops whose tables are later changed
+     * (e.g. by adding a route) go back to holding their own entries.
+     *
+     * @return The routing matrix now holding the network's routing tables.
+     */
+    public RoutingMatrix compactRouting() {
+        return RoutingMatrix.compact(stops);
+    }
+
+    /**
+     * Makes the given routing cache manage the routing tables of all the stops
+     * in this network, as well as any stops added to it later (see
+     * {@link RoutingCache#manage(Stop)}).
+     *
+     * <p>Routing tables are then only computed for the stops whose routing is
+     * actually requested, and only as many are kept as the cache allows.
+     *
+     * <p>If the given cache is null, the method does nothing.
+     *
+     * @param cache The cache to manage the routing tables of the stops.
+     */
+    public void setRoutingCache(RoutingCache cache) {
+        if (cache == null) {
+            return;
+        }
+
+        routingCache = cache;
+        cache.manageAll(stops);
+    }
+
+    /**
+     * Returns the routing cache managing the routing tables of the stops in
+     * this network.
+     *
+     * @return The routing cache for the network, or null if each stop holds
+     * its own routing table.
+     */
+    public RoutingCache getRoutingCache() {
+        return routingCache;
+    }
+
+    /**
+     * Makes the given index route the passengers placed at all the stops in
+     * this network, as well as any stops added to it later (see
+     * {@link DestinationTrees#manage(Stop)}).
+     *
+     * <p>If the given index is null, the method does nothing.
+     *
+     * @param trees The index to route passengers at the stops.
+     */
+    public void setDestinationTrees(DestinationTrees trees) {
+        if (trees == null) {
+            return;
+        }
+
+        destinationTrees = trees;
+        trees.manageAll(stops);
+    }
+
+    /**
+     * Returns the index routing the passengers placed at the stops in this
+     * network.
+     *
+     * @return The destination index for the network, or null if passengers
+     * are routed using each stop's routing table.
+     */
+    public DestinationTrees getDestinationTrees() {
+        return destinationTrees;
     }
 
     /**
@@ -220,6 +538,46 @@ public class Network {
         return new ArrayList<>(stops);
     }
 
+    /**
+     * Creates a snapshot of the connections between the stops in this network
+     * (see {@link StopGraph}).
+     *
+     * <p>Stops are indexed in the same order as {@link #getStops()}.
+     *
+     * @return A graph of the stops in the network.
+     */
+    public StopGraph getStopGraph() {
+        return new StopGraph(stops);
+    }
+
+    /**
+     * Divides the stops in this network into groups of stops which are
+     * connected to each other (see {@link StopGraph#getComponents()}).
+     *
+     * <p>A network whose stops are all connected has a single group. Each
+     * additional group is an island of stops which cannot be reached from
+     * the rest of the network.
+     *
+     * <p>Groups are ordered by the first stop (in the order of
+     * {@link #getStops()}) they contain, and stops within each group are in
+     * the same order as {@link #getStops()}.
+     *
+     * @return The groups of connected stops in the network.
+     */
+    public List<List<Stop>> getConnectedComponents() {
+        StopGraph graph = getStopGraph();
+        int[] labels = graph.getComponents();
+        List<List<Stop>> components = new ArrayList<>();
+
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] == components.size()) {
+                components.add(new ArrayList<>());
+            }
+            components.get(labels[i]).add(graph.getStop(i));
+        }
+        return components;
+    }
+
     /**
      * Adds the given route to the network.
      *
@@ -230,6 +588,7 @@ public class Network {
     public void addRoute(Route route) {
         if (route != null) {
             routes.add(route);
+            routesByNumber.putIfAbsent(route.getRouteNumber(), route);
         }
     }
 
@@ -258,6 +617,43 @@ public class Network {
         }
     }
 
+    /**
+     * Returns the first stop in this network with the given name.
+     *
+     * <p>Stops are looked up in an index of the network's stops by name, so
+     * this takes constant time however many stops the network has. If several
+     * stops have the same name, the first of them to be added to the network
+     * is returned, as when decoding routes (see
+     * {@link Route#decode(String, List)}).
+     *
+     * @param name The name of the stop to find.
+     * @return The first stop with the given name, or null if there is none
+     * (or the given name is null).
+     */
+    public Stop findStop(String name) {
+        if (name == null) {
+            return null;
+        }
+        return stopsByName.get(name);
+    }
+
+    /**
+     * Returns the first route in this network with the given route number.
+     *
+     * <p>Routes are looked up in an index of the network's routes by number,
+     * so this takes constant time however many routes the network has. If
+     * several routes have the same number, the first of them to be added to
+     * the network is returned, as when decoding vehicles (see
+     * {@link PublicTransport#decode(String, List)}).
+     *
+     * @param routeNumber The number of the route to find.
+     * @return The first route with the given number, or null if there is
+     * none.
+     */
+    public Route findRoute(int routeNumber) {
+        return routesByNumber.get(routeNumber);
+    }
+
     /**
      * Gets all the vehicles in this transportation network.
      *
@@ -283,43 +679,279 @@ public class Network {
      *
      * <p>If the given filename is null, the method should do nothing.
      *
+     * <p>The file is written in the platform's default charset, as described
+     * in {@link #save(String, Charset)}.
+     *
      * @param filename The name of the file to save the network to.
      * @throws IOException If there are any IO errors whilst writing to the
      * file.
      */
     public void save(String filename) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
-        writer.write(this.encode());
-        writer.close();
+        save(filename, Charset.defaultCharset());
+    }
+
+    /**
+     * Saves this network to the file indicated by the given filename, as
+     * described in {@link #save(String)}, in the given charset.
+     *
+     * <p>Each stop, route and vehicle is encoded and written in turn through
+     * a fixed size buffer, so the contents of the file are never held in
+     * memory at once. The network is first written to a new temporary file
+     * with a unique name in the same directory as the given file, which is
+     * forced to the storage device and then moved over the given file,
+     * atomically where the file system allows it. If saving fails or is
+     * interrupted, any existing file is left as it was, rather than partly
+     * overwritten, and saves to the same file at the same time do not write
+     * to the same temporary file. If the given file already exists, the saved
+     * file keeps its permissions where the file system supports them.
+     *
+     * <p>If the given filename is null, the method should do nothing. If the
+     * given charset is null, the platform's default charset is used.
+     *
+     * @param filename The name of the file to save the network to.
+     * @param charset The charset to encode the file with.
+     * @throws IOException If there are any IO errors whilst writing to the
+     * file.
+     * @throws java.nio.charset.CharacterCodingException If the name of any stop, route or
+     * vehicle cannot be encoded in the given charset, in which case the given
+     * file is left unchanged.
+     */
+    public void save(String filename, Charset charset) throws IOException {
+        if (filename == null) {
+            return;
+        }
+        if (charset == null) {
+            charset = Charset.defaultCharset();
+        }
+
+        Path target = Paths.get(filename).toAbsolutePath();
+        // characters which cannot be encoded are reported rather than
+        // replaced, so that a saved network always loads as it was saved
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        Path temporary = Files.createTempFile(target.getParent(),
+                target.getFileName() + ".", ".tmp");
+        try {
+            copyPermissions(target, temporary);
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer writer = new BufferedWriter(Channels.newWriter(channel,
+                        encoder, SAVE_BUFFER_SIZE), SAVE_BUFFER_SIZE);
+                writeComponent(writer, stops);
+                writeComponent(writer, routes);
+                writeComponent(writer, vehicles);
+                writer.flush();
+                channel.force(true);
+            }
+
+            replace(target, temporary);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
     }
 
     /*
-     * Encodes the given list into a String of the format:
-     * {size}
-     * {toString}
-     * {toString}
-     * ...
-     * {toString}
+     * Moves the given temporary file over the given target file, atomically
+     * where the file system allows it.
+     */
+    static void replace(Path target, Path temporary) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+     * Gives the given copy the same POSIX permissions as the given original
+     * file, if the original exists and its file system supports them.
+     */
+    static void copyPermissions(Path original, Path copy)
+            throws IOException {
+        try {
+            Files.setPosixFilePermissions(copy,
+                    Files.getPosixFilePermissions(original));
+        } catch (NoSuchFileException | UnsupportedOperationException e) {
+            // a new file, or permissions which cannot be copied, keep those
+            // of the temporary file
+        }
+    }
+
+    /**
+     * Saves a binary snapshot of this network to the file indicated by the
+     * given filename (see {@link #loadSnapshot(String)}).
+     *
+     * <p>A snapshot holds the same stops, routes and vehicles as a file
+     * written by {@link #save(String)}, in the same order, but can be loaded
+     * much faster. If routing is included, the current routing information of
+     * every stop is also saved, so that it does not need to be computed again
+     * when the snapshot is loaded. This should only be done while routing is
+     * not suspended, and for networks small enough for a
+     * {@link RoutingMatrix} of all their stops to fit in memory.
+     *
+     * <p>If the given filename is null, the method should do nothing.
+     *
+     * @param filename The name of the file to save the snapshot to.
+     * @param includeRouting Whether to include the routing information of
+     *                       the stops.
+     * @throws IOException If there are any IO errors whilst writing to the
+     * file.
+     */
+    public void saveSnapshot(String filename, boolean includeRouting)
+            throws IOException {
+        if (filename == null) {
+            return;
+        }
+        NetworkSnapshot.write(filename, stops, routes, vehicles,
+                includeRouting);
+    }
+
+    /**
+     * Loads a network from a binary snapshot previously saved to the file
+     * indicated by the given filename (see
+     * {@link #saveSnapshot(String, boolean)}).
+     *
+     * <p>The file is memory-mapped rather than read line by line. If the
+     * snapshot includes routing information, the routing table of every stop
+     * becomes a view over a routing matrix holding it (see
+     * {@link RoutingMatrix#attachResumed()}), and no routing is computed.
+     * Otherwise, the routing tables are computed once the whole network has
+     * been loaded, as in {@link #Network(String)}.
+     *
+     * @param filename The name of the file to load the snapshot from.
+     * @return The loaded network.
+     * @throws IOException If any IO exceptions occur whilst trying to read from
+     *         the file, or if the filename is null.
+     * @throws TransportFormatException If the file is not a network snapshot,
+     *         is incomplete, or holds a network which cannot be recreated.
+     */
+    public static Network loadSnapshot(String filename) throws IOException,
+            TransportFormatException {
+        return loadSnapshot(filename, null);
+    }
+
+    /**
+     * Loads a network from a binary snapshot, as in
+     * {@link #loadSnapshot(String)}, whose stops use the given routing cache
+     * for their routing tables (see {@link #setRoutingCache(RoutingCache)}).
      *
-     * where {size} is the size of the list and {toString} is a call to the
-     * toString method of each item in the list.
+     * <p>No routing is computed while the snapshot is loaded, and any routing
+     * information it includes is ignored. If the given cache is null, the
+     * network is loaded as in {@link #loadSnapshot(String)}.
+     *
+     * @param filename The name of the file to load the snapshot from.
+     * @param cache The cache to manage the routing tables of the stops.
+     * @return The loaded network.
+     * @throws IOException If any IO exceptions occur whilst trying to read from
+     *         the file, or if the filename is null.
+     * @throws TransportFormatException If the file is not a network snapshot,
+     *         is incomplete, or holds a network which cannot be recreated.
+     */
+    public static Network loadSnapshot(String filename, RoutingCache cache)
+            throws IOException, TransportFormatException {
+        if (filename == null) {
+            throw new IOException();
+        }
+
+        NetworkSnapshot snapshot = NetworkSnapshot.read(filename);
+        Network network = new Network();
+        network.stops = snapshot.getStops();
+        network.routes = snapshot.getRoutes();
+        network.vehicles = snapshot.getVehicles();
+        network.indexAll();
+        network.routingSuspended = true;
+
+        RoutingMatrix matrix = snapshot.getMatrix();
+        if (cache != null) {
+            network.setRoutingCache(cache);
+            network.routingSuspended = false;
+        } else if (matrix != null && matrix.size() == network.stops.size()) {
+            matrix.attachResumed();
+            network.routingSuspended = false;
+        } else {
+            network.resumeRouting();
+        }
+        return network;
+    }
+
+    /*
+     * Rebuilds the hashed index of stops, and the indices of stops by name
+     * and routes by number, from the lists of all the network's stops and
+     * routes.
      */
-    private String encodeComponent(List<? extends Writeable> toEncode) {
-        StringBuilder builder = new StringBuilder();
+    private void indexAll() {
+        stopSet.clear();
+        stopsByName.clear();
+        for (Stop stop : stops) {
+            stopSet.add(stop);
+            stopsByName.putIfAbsent(stop.getName(), stop);
+        }
 
-        builder.append(toEncode.size()).append(NEWLINE);
-        for (Writeable component : toEncode) {
-            builder.append(component.encode()).append(NEWLINE);
+        routesByNumber.clear();
+        for (Route route : routes) {
+            routesByNumber.putIfAbsent(route.getRouteNumber(), route);
         }
+    }
+
+    /*
+     * Updates the indices of stops after the given stop has been removed from
+     * the network, so that the index by name holds the first remaining stop
+     * with its name, if there is one, and the hashed index still holds any
+     * remaining stop equal to it.
+     */
+    private void reindex(Stop removed) {
+        String name = removed.getName();
+        stopSet.remove(removed);
+        stopsByName.remove(name);
+        for (Stop stop : stops) {
+            if (stop.getName().equals(name)) {
+                stopsByName.putIfAbsent(name, stop);
+                if (stop.equals(removed)) {
+                    stopSet.add(stop);
+                }
+            }
+        }
+    }
 
-        return builder.toString();
+    /*
+     * Prepares the routing table of the given stop for being added to this
+     * network, by placing it under the network's destination index and
+     * routing cache, or suspending it if routing is currently suspended.
+     */
+    private void prepareRouting(Stop stop) {
+        if (destinationTrees != null) {
+            destinationTrees.manage(stop);
+        }
+        if (routingCache != null) {
+            routingCache.manage(stop);
+        } else if (routingSuspended && stop.getRoutingCache() == null) {
+            stop.getRoutingTable().suspend();
+        }
     }
 
     /*
-     * Encodes the component of this network as a string.
+     * Writes the given list to the given writer in the format:
+     * {size}
+     * {encode}
+     * {encode}
+     * ...
+     * {encode}
+     *
+     * where {size} is the size of the list and {encode} is each item in the
+     * list encoded straight to the writer.
      */
-    private String encode() {
-        return encodeComponent(stops) + encodeComponent(routes) +
-                encodeComponent(vehicles);
+    private void writeComponent(Writer writer,
+                                List<? extends Writeable> toWrite)
+            throws IOException {
+        Writeable.appendInt(writer, toWrite.size());
+        writer.write(NEWLINE);
+        for (Writeable component : toWrite) {
+            component.encode(writer);
+            writer.write(NEWLINE);
+        }
     }
 }
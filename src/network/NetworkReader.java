@@ -0,0 +1,825 @@
+package network;
+
+import exceptions.TransportException;
+import exceptions.TransportFormatException;
+import routes.BusRoute;
+import routes.FerryRoute;
+import routes.Route;
+import routes.TrainRoute;
+import stops.Stop;
+import vehicles.Bus;
+import vehicles.Ferry;
+import vehicles.PublicTransport;
+import vehicles.Train;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Reads a network file (in the format described in
+ * {@link Network#Network(String)}) in a single pass.
+ *
+ * <p>The file is read a block at a time, and each line is split into fields
+ * by finding the positions of its delimiters in place, so no string is
+ * created for a line or any of its fields other than the names, types and
+ * registration numbers which are stored. The lines are validated by exactly
+ * the same rules as {@link Stop#decode(String)},
+ * {@link Route#decode(String, List)} and
+ * {@link PublicTransport#decode(String, List)}, and the first error found is
+ * reported with its line and column (see
+ * {@link TransportFormatException#getLine()}).
+ *
+ * <p>The stops on each route are found by name, and the route of each
+ * vehicle by number, using an index rather than searching every stop or
+ * route. As with the decode methods, the first stop with a given name, and
+ * the first route with a given number, is used.
+ *
+ * <p>The lines of each section are read into chunks, which are decoded in
+ * parallel on a {@link ForkJoinPool} while the rest of the section is read.
+ * Decoding a chunk only creates new stops, routes and vehicles, and reads the
+ * indices of stops and routes from earlier sections, which are complete
+ * before it starts. The results of each chunk are then linked into the
+ * network (for example, by adding the stops of each route to it) by the
+ * reading thread, one line at a time and in the order the lines appear in
+ * the file, so the network and the error reported for an incorrectly
+ * formatted file are the same as if every line had been decoded in turn. If
+ * the pool cannot run any tasks alongside the reading thread, each chunk is
+ * simply decoded and linked as soon as it has been read.
+ */
+class NetworkReader {
+    // the number of characters read from the file at once
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // the number of lines decoded together by a single task
+    private static final int CHUNK_LINES = 2048;
+
+    // the sections lines can belong to
+    private static final int STOPS = 0;
+    private static final int ROUTES = 1;
+    private static final int VEHICLES = 2;
+
+    // the reader the file is read from
+    private Reader reader;
+
+    // the pool chunks of lines are decoded in
+    private ForkJoinPool pool;
+
+    // the characters read from the file which have not yet been processed
+    private char[] buffer;
+    private int position;
+    private int limit;
+
+    // whether a line feed should be skipped, as the previous line ended with
+    // a carriage return
+    private boolean skipLineFeed;
+
+    // the number of lines read so far
+    private int lineNumber;
+
+    // the stops read so far, indexed by name with open addressing
+    private Stop[] stopsByName;
+    private int indexedStops;
+
+    // the first route read with each route number
+    private Map<Integer, Route> routesByNumber;
+
+    // the action performed on each stop as it is linked
+    private Consumer<Stop> prepare;
+
+    // the stops, routes and vehicles linked so far, in order
+    private List<Stop> stops;
+    private List<Route> routes;
+    private List<PublicTransport> vehicles;
+
+    /**
+     * Creates a new NetworkReader reading from the given reader, decoding
+     * lines in the given pool.
+     *
+     * @param reader The reader to read the network file from.
+     * @param pool The pool to decode lines in.
+     */
+    NetworkReader(Reader reader, ForkJoinPool pool) {
+        this.reader = reader;
+        this.pool = pool;
+        this.buffer = new char[BUFFER_SIZE];
+        this.stopsByName = new Stop[64];
+        this.routesByNumber = new HashMap<>();
+    }
+
+    /**
+     * Reads the stops section of the file.
+     *
+     * @param prepare An action to perform on each stop, in order, before any
+     *                routes are added to it.
+     * @return The stops read, in order.
+     * @throws IOException If any IO exceptions occur whilst reading the file.
+     * @throws TransportFormatException If the section is incorrectly
+     *         formatted.
+     */
+    List<Stop> readStops(Consumer<Stop> prepare) throws IOException,
+            TransportFormatException {
+        this.prepare = prepare;
+        this.stops = new ArrayList<>();
+        readSection(STOPS);
+        return this.stops;
+    }
+
+    /**
+     * Reads the routes section of the file, adding the stops of each route
+     * to it.
+     *
+     * @return The routes read, in order.
+     * @throws IOException If any IO exceptions occur whilst reading the file.
+     * @throws TransportFormatException If the section is incorrectly
+     *         formatted.
+     */
+    List<Route> readRoutes() throws IOException, TransportFormatException {
+        this.routes = new ArrayList<>();
+        readSection(ROUTES);
+        return this.routes;
+    }
+
+    /**
+     * Reads the vehicles section of the file, adding each vehicle to its
+     * route.
+     *
+     * @return The vehicles read, in order.
+     * @throws IOException If any IO exceptions occur whilst reading the file.
+     * @throws TransportFormatException If the section is incorrectly
+     *         formatted.
+     */
+    List<PublicTransport> readVehicles() throws IOException,
+            TransportFormatException {
+        this.vehicles = new ArrayList<>();
+        readSection(VEHICLES);
+        return this.vehicles;
+    }
+
+    /**
+     * Checks that there are no more lines in the file.
+     *
+     * @throws IOException If any IO exceptions occur whilst reading the file.
+     * @throws TransportFormatException If there are any more lines.
+     */
+    void readEnd() throws IOException, TransportFormatException {
+        if (readLine(new Chunk(STOPS, 1))) {
+            throw new TransportFormatException(this.lineNumber, 1);
+        }
+    }
+
+    /*
+     * Reads a section of the given kind, starting with the line holding the
+     * number of lines in it, decoding its lines in chunks and linking them in
+     * order. If the file ends before the end of the section, the last chunk
+     * reports the missing line once its own lines have been linked.
+     */
+    private void readSection(int kind) throws IOException,
+            TransportFormatException {
+        Chunk countLine = new Chunk(kind, 1);
+        if (!readLine(countLine)) {
+            throw new TransportFormatException(this.lineNumber + 1, 1);
+        }
+        int count = countLine.parseCount();
+
+        Deque<Chunk> pending = new ArrayDeque<>();
+        Chunk chunk = new Chunk(kind, CHUNK_LINES);
+        for (int i = 0; i < count; i++) {
+            if (chunk.lines == CHUNK_LINES) {
+                chunk = decode(chunk, pending);
+            }
+            if (!readLine(chunk)) {
+                chunk.missingLine = this.lineNumber + 1;
+                break;
+            }
+        }
+
+        // the last chunk is decoded in this thread
+        chunk.invoke();
+        pending.add(chunk);
+        while (!pending.isEmpty()) {
+            link(pending.remove());
+        }
+    }
+
+    /*
+     * Decodes the given full chunk, which is linked after the chunks already
+     * pending, and returns an empty chunk to read the next lines into.
+     *
+     * If the pool can run chunks alongside this thread, the chunk is decoded
+     * in the pool while reading continues, and any chunks which have finished
+     * are linked, waiting for the oldest if too many are pending. Otherwise,
+     * it is decoded and linked immediately, and then reused.
+     */
+    private Chunk decode(Chunk chunk, Deque<Chunk> pending)
+            throws TransportFormatException {
+        if (this.pool.getParallelism() < 2) {
+            chunk.invoke();
+            link(chunk);
+            chunk.clear();
+            return chunk;
+        }
+
+        this.pool.execute(chunk);
+        pending.add(chunk);
+        while (!pending.isEmpty() && (pending.peek().isDone()
+                || pending.size() > 2 * this.pool.getParallelism())) {
+            link(pending.remove());
+        }
+        return new Chunk(chunk.kind, CHUNK_LINES);
+    }
+
+    /*
+     * Waits for the given chunk to be decoded, and links each of its lines
+     * into the network in order, before throwing the first error found while
+     * decoding it, if any.
+     */
+    private void link(Chunk chunk) throws TransportFormatException {
+        chunk.join();
+        for (int i = 0; i < chunk.decoded; i++) {
+            switch (chunk.kind) {
+                case STOPS:
+                    Stop stop = (Stop) chunk.results[i];
+                    this.prepare.accept(stop);
+                    this.stops.add(stop);
+                    indexStop(stop);
+                    break;
+                case ROUTES:
+                    Route route = (Route) chunk.results[i];
+                    for (int j = i == 0 ? 0 : chunk.routeStopEnds[i - 1];
+                         j < chunk.routeStopEnds[i]; j++) {
+                        route.addStop(chunk.routeStops[j]);
+                    }
+                    this.routes.add(route);
+                    this.routesByNumber.putIfAbsent(route.getRouteNumber(),
+                            route);
+                    break;
+                default:
+                    PublicTransport vehicle =
+                            (PublicTransport) chunk.results[i];
+                    try {
+                        vehicle.getRoute().addTransport(vehicle);
+                    } catch (TransportException e) {
+                        throw chunk.routeError(i);
+                    }
+                    this.vehicles.add(vehicle);
+                    break;
+            }
+        }
+        chunk.throwError();
+    }
+
+    /*
+     * Adds the given stop to the name index, unless a stop with the same name
+     * has already been read.
+     */
+    private void indexStop(Stop stop) {
+        if (2 * (this.indexedStops + 1) > this.stopsByName.length) {
+            Stop[] previous = this.stopsByName;
+            this.stopsByName = new Stop[previous.length * 2];
+            for (Stop indexed : previous) {
+                if (indexed != null) {
+                    insert(indexed);
+                }
+            }
+        }
+        if (insert(stop)) {
+            this.indexedStops++;
+        }
+    }
+
+    /*
+     * Places the given stop in the first free slot for its name, returning
+     * false instead if a stop with the same name is already indexed.
+     */
+    private boolean insert(Stop stop) {
+        String name = stop.getName();
+        int slot = slotOf(name.hashCode());
+        while (this.stopsByName[slot] != null) {
+            if (this.stopsByName[slot].getName().equals(name)) {
+                return false;
+            }
+            slot = (slot + 1) & (this.stopsByName.length - 1);
+        }
+        this.stopsByName[slot] = stop;
+        return true;
+    }
+
+    /*
+     * Returns the slot of the name index at which a stop with the given name
+     * hash should be looked for first.
+     */
+    private int slotOf(int hash) {
+        return (hash ^ (hash >>> 16)) & (this.stopsByName.length - 1);
+    }
+
+    /*
+     * Reads the next line onto the end of the given chunk, returning false if
+     * the end of the file has been reached. Lines end with a line feed, a
+     * carriage return, or a carriage return followed by a line feed, as in
+     * BufferedReader.readLine.
+     */
+    private boolean readLine(Chunk chunk) throws IOException {
+        boolean started = false;
+
+        while (true) {
+            if (this.position == this.limit) {
+                this.limit = Math.max(this.reader.read(this.buffer), 0);
+                this.position = 0;
+                if (this.limit == 0) {
+                    if (started) {
+                        chunk.endLine(++this.lineNumber);
+                    }
+                    return started;
+                }
+            }
+
+            if (this.skipLineFeed) {
+                this.skipLineFeed = false;
+                if (this.buffer[this.position] == '\n') {
+                    this.position++;
+                    continue;
+                }
+            }
+            started = true;
+
+            int start = this.position;
+            while (this.position < this.limit
+                    && this.buffer[this.position] != '\n'
+                    && this.buffer[this.position] != '\r') {
+                this.position++;
+            }
+            chunk.append(this.buffer, start, this.position);
+
+            if (this.position < this.limit) {
+                this.skipLineFeed = this.buffer[this.position] == '\r';
+                this.position++;
+                chunk.endLine(++this.lineNumber);
+                return true;
+            }
+        }
+    }
+
+    /*
+     * A run of consecutive lines from one section of the file, which are
+     * decoded together by a single task.
+     */
+    @SuppressWarnings("serial")
+    private class Chunk extends RecursiveAction {
+        // the section the lines belong to
+        private int kind;
+
+        // the characters of all the lines, one after another
+        private char[] text;
+        private int length;
+
+        // the position after the end of each line in the text
+        private int[] ends;
+
+        // the number of lines in the chunk
+        private int lines;
+
+        // the line number of the first line in the chunk
+        private int firstLine;
+
+        // the number of the line missing from the end of the file after this
+        // chunk, or 0 if there is none
+        private int missingLine;
+
+        // the stop, route or vehicle decoded from each line
+        private Object[] results;
+
+        // the stops of every route decoded from a line, one route after
+        // another, and the position after the stops of each route
+        private Stop[] routeStops;
+        private int routeStopCount;
+        private int[] routeStopEnds;
+
+        // the number of lines decoded before an error was found
+        private int decoded;
+
+        // the first error found, or null if there was none
+        private TransportFormatException error;
+
+        // the range of the text holding the current line, and its number
+        private int start;
+        private int end;
+        private int number;
+
+        /*
+         * Creates a new empty chunk able to hold the given number of lines
+         * from the given section.
+         */
+        private Chunk(int kind, int capacity) {
+            this.kind = kind;
+            this.text = new char[256];
+            this.ends = new int[capacity];
+        }
+
+        /*
+         * Appends the characters of the given array from the first position
+         * up to (but not including) the second to the current last line.
+         */
+        private void append(char[] characters, int from, int to) {
+            int count = to - from;
+            if (this.length + count > this.text.length) {
+                this.text = Arrays.copyOf(this.text, Math.max(
+                        this.text.length * 2, this.length + count));
+            }
+            System.arraycopy(characters, from, this.text, this.length, count);
+            this.length += count;
+        }
+
+        /*
+         * Empties this chunk, so that it can be filled and decoded again.
+         */
+        private void clear() {
+            reinitialize();
+            this.length = 0;
+            this.lines = 0;
+            this.missingLine = 0;
+            this.routeStopCount = 0;
+            this.decoded = 0;
+            this.error = null;
+        }
+
+        /*
+         * Ends the current last line, which has the given line number.
+         */
+        private void endLine(int lineNumber) {
+            if (this.lines == 0) {
+                this.firstLine = lineNumber;
+            }
+            this.ends[this.lines++] = this.length;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.results == null) {
+                this.results = new Object[this.ends.length];
+            }
+            if (this.kind == ROUTES && this.routeStops == null) {
+                this.routeStops = new Stop[4 * this.ends.length];
+                this.routeStopEnds = new int[this.ends.length];
+            }
+
+            try {
+                for (this.decoded = 0; this.decoded < this.lines;
+                     this.decoded++) {
+                    select(this.decoded);
+                    switch (this.kind) {
+                        case STOPS:
+                            this.results[this.decoded] = parseStop();
+                            break;
+                        case ROUTES:
+                            this.results[this.decoded] = parseRoute();
+                            break;
+                        default:
+                            this.results[this.decoded] = parseVehicle();
+                            break;
+                    }
+                }
+                if (this.missingLine > 0) {
+                    throw new TransportFormatException(this.missingLine, 1);
+                }
+            } catch (TransportFormatException e) {
+                this.error = e;
+            }
+        }
+
+        /*
+         * Throws the first error found while decoding this chunk, if any.
+         */
+        private void throwError() throws TransportFormatException {
+            if (this.error != null) {
+                throw this.error;
+            }
+        }
+
+        /*
+         * Returns an exception for the vehicle decoded from the line with the
+         * given index not being able to be added to its route.
+         */
+        private TransportFormatException routeError(int index) {
+            select(index);
+            int comma = this.start - 1;
+            for (int i = 0; i < 3; i++) {
+                comma = indexOf(',', comma + 1, this.end);
+            }
+            return error(comma + 1);
+        }
+
+        /*
+         * Makes the line with the given index the current line.
+         */
+        private void select(int index) {
+            this.start = index == 0 ? 0 : this.ends[index - 1];
+            this.end = this.ends[index];
+            this.number = this.firstLine + index;
+        }
+
+        /*
+         * Parses the only line of this chunk as the number of lines in a
+         * section, which must be a non-negative integer.
+         */
+        private int parseCount() throws TransportFormatException {
+            select(0);
+            int count = parseInt(this.start, this.end);
+            if (count < 0) {
+                throw error(this.start);
+            }
+            return count;
+        }
+
+        /*
+         * Parses the current line as a stop, as in Stop.decode.
+         */
+        private Stop parseStop() throws TransportFormatException {
+            // there should be exactly three parts
+            int first = indexOf(':', this.start, this.end);
+            int second = first < 0 ? -1 : indexOf(':', first + 1, this.end);
+            if (second < 0) {
+                throw error(this.end);
+            }
+            int extra = indexOf(':', second + 1, this.end);
+            if (extra >= 0) {
+                throw error(extra);
+            }
+
+            if (first == this.start) {
+                throw error(this.start);
+            }
+            String name = new String(this.text, this.start, first - this.start);
+            int x = parseInt(first + 1, second);
+            int y = parseInt(second + 1, this.end);
+            return new Stop(name, x, y);
+        }
+
+        /*
+         * Parses the current line as a route, as in Route.decode, without
+         * adding its stops to it.
+         */
+        private Route parseRoute() throws TransportFormatException {
+            // a single trailing colon is ignored
+            int end = this.end;
+            if (end > this.start && this.text[end - 1] == ':') {
+                end--;
+            }
+
+            // when there are any parts after the first, the last can't be
+            // empty
+            int colon = indexOf(':', this.start, end);
+            if (colon >= 0 && this.text[end - 1] == ':') {
+                throw error(end);
+            }
+            int identifiersEnd = colon < 0 ? end : colon;
+
+            // there should be three identifiers, ignoring any empty trailing
+            // ones
+            int typeEnd = indexOf(',', this.start, identifiersEnd);
+            int nameEnd = typeEnd < 0 ? -1
+                    : indexOf(',', typeEnd + 1, identifiersEnd);
+            if (nameEnd < 0) {
+                throw error(identifiersEnd);
+            }
+            int numberEnd = indexOf(',', nameEnd + 1, identifiersEnd);
+            if (numberEnd < 0) {
+                numberEnd = identifiersEnd;
+            }
+            if (numberEnd == nameEnd + 1) {
+                throw error(numberEnd);
+            }
+            for (int i = numberEnd; i < identifiersEnd; i++) {
+                if (this.text[i] != ',') {
+                    throw error(i);
+                }
+            }
+
+            String name = new String(this.text, typeEnd + 1,
+                    nameEnd - typeEnd - 1);
+            int number = parseInt(nameEnd + 1, numberEnd);
+            Route route;
+            if (matches(this.start, typeEnd, "train")) {
+                route = new TrainRoute(name, number);
+            } else if (matches(this.start, typeEnd, "bus")) {
+                route = new BusRoute(name, number);
+            } else if (matches(this.start, typeEnd, "ferry")) {
+                route = new FerryRoute(name, number);
+            } else {
+                throw error(this.start);
+            }
+
+            if (colon >= 0) {
+                // only the part after the first colon holds stops
+                int stopsEnd = indexOf(':', colon + 1, end);
+                if (stopsEnd < 0) {
+                    stopsEnd = end;
+                }
+                int from = colon + 1;
+                while (true) {
+                    int bar = indexOf('|', from, stopsEnd);
+                    int to = bar < 0 ? stopsEnd : bar;
+                    Stop stop = findStop(from, to);
+                    if (stop == null) {
+                        throw error(from);
+                    }
+                    addRouteStop(stop);
+
+                    if (bar < 0) {
+                        break;
+                    }
+                    from = bar + 1;
+                }
+            }
+
+            this.routeStopEnds[this.decoded] = this.routeStopCount;
+            return route;
+        }
+
+        /*
+         * Parses the current line as a vehicle, as in PublicTransport.decode,
+         * without adding it to its route.
+         */
+        private PublicTransport parseVehicle()
+                throws TransportFormatException {
+            // there should be exactly five parts, the last of which isn't
+            // empty
+            int[] commas = new int[4];
+            int from = this.start;
+            for (int i = 0; i < commas.length; i++) {
+                commas[i] = indexOf(',', from, this.end);
+                if (commas[i] < 0) {
+                    throw error(this.end);
+                }
+                from = commas[i] + 1;
+            }
+            int extra = indexOf(',', from, this.end);
+            if (extra >= 0) {
+                throw error(extra);
+            }
+            if (from == this.end) {
+                throw error(from);
+            }
+
+            int id = parseInt(commas[0] + 1, commas[1]);
+            int capacity = parseInt(commas[1] + 1, commas[2]);
+            int number = parseInt(commas[2] + 1, commas[3]);
+            Route route = NetworkReader.this.routesByNumber.get(number);
+            if (route == null) {
+                throw error(commas[2] + 1);
+            }
+            if (!matches(this.start, commas[0], route.getType())) {
+                throw error(this.start);
+            }
+
+            switch (route.getType()) {
+                case "train":
+                    return new Train(id, capacity, route,
+                            parseInt(from, this.end));
+                case "bus":
+                    return new Bus(id, capacity, route,
+                            new String(this.text, from, this.end - from));
+                case "ferry":
+                    return new Ferry(id, capacity, route,
+                            new String(this.text, from, this.end - from));
+                default:
+                    throw error(this.start);
+            }
+        }
+
+        /*
+         * Adds the given stop to the stops of the route being decoded.
+         */
+        private void addRouteStop(Stop stop) {
+            if (this.routeStopCount == this.routeStops.length) {
+                this.routeStops = Arrays.copyOf(this.routeStops,
+                        this.routeStops.length * 2);
+            }
+            this.routeStops[this.routeStopCount++] = stop;
+        }
+
+        /*
+         * Parses the characters of the text from the first position up to
+         * (but not including) the second as an integer, ignoring leading and
+         * trailing whitespace, with the same rules as Integer.parseInt.
+         */
+        private int parseInt(int from, int to)
+                throws TransportFormatException {
+            int position = from;
+
+            // trim whitespace, as in String.trim
+            while (from < to && this.text[from] <= ' ') {
+                from++;
+            }
+            while (to > from && this.text[to - 1] <= ' ') {
+                to--;
+            }
+            if (from == to) {
+                throw error(position);
+            }
+
+            boolean negative = false;
+            int limit = -Integer.MAX_VALUE;
+            char first = this.text[from];
+            if (first < '0') {
+                if (first == '-') {
+                    negative = true;
+                    limit = Integer.MIN_VALUE;
+                } else if (first != '+') {
+                    throw error(from);
+                }
+                if (to - from == 1) {
+                    throw error(from);
+                }
+                from++;
+            }
+
+            // accumulated negatively, so that Integer.MIN_VALUE can be parsed
+            int multiplyLimit = limit / 10;
+            int result = 0;
+            for (int i = from; i < to; i++) {
+                int digit = Character.digit(this.text[i], 10);
+                if (digit < 0 || result < multiplyLimit) {
+                    throw error(i);
+                }
+                result *= 10;
+                if (result < limit + digit) {
+                    throw error(i);
+                }
+                result -= digit;
+            }
+            return negative ? result : -result;
+        }
+
+        /*
+         * Returns the position of the first occurrence of the given character
+         * in the text from the first position up to (but not including) the
+         * second, or -1 if there is none.
+         */
+        private int indexOf(char character, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (this.text[i] == character) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /*
+         * Returns whether the characters of the text from the first position
+         * up to (but not including) the second are the given string.
+         */
+        private boolean matches(int from, int to, String value) {
+            if (to - from != value.length()) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (this.text[i] != value.charAt(i - from)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /*
+         * Returns the first stop read whose name is the characters of the
+         * text from the first position up to (but not including) the second,
+         * or null if there is none.
+         */
+        private Stop findStop(int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + this.text[i];
+            }
+
+            Stop[] index = NetworkReader.this.stopsByName;
+            int slot = slotOf(hash);
+            Stop stop;
+            while ((stop = index[slot]) != null) {
+                if (matches(from, to, stop.getName())) {
+                    return stop;
+                }
+                slot = (slot + 1) & (index.length - 1);
+            }
+            return null;
+        }
+
+        /*
+         * Returns an exception for an error at the given position of the
+         * text, which is on the current line.
+         */
+        private TransportFormatException error(int position) {
+            return new TransportFormatException(this.number,
+                    position - this.start + 1);
+        }
+    }
+}
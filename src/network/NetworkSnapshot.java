@@ -0,0 +1,563 @@
+package network;
+
+import exceptions.NoNameException;
+import exceptions.TransportException;
+import exceptions.TransportFormatException;
+import routes.BusRoute;
+import routes.FerryRoute;
+import routes.Route;
+import routes.TrainRoute;
+import stops.RoutingMatrix;
+import stops.Stop;
+import vehicles.Bus;
+import vehicles.Ferry;
+import vehicles.PublicTransport;
+import vehicles.Train;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes binary snapshots of a network (see
+ * {@link Network#saveSnapshot(String, boolean)}).
+ *
+ * <p>A snapshot holds the same information as the text format described in
+ * {@link Network#Network(String)}, in a form which can be read without
+ * splitting or parsing any text other than names. Every value is stored
+ * big-endian, and strings are stored as their length in bytes followed by
+ * their UTF-8 encoding. The file contains, in order:
+ * <ol>
+ *     <li>A header: the magic number 0x544E5350, the format version, and a
+ *     set of flags, where bit 0 is set if the snapshot holds routing
+ *     information.</li>
+ *     <li>The stops: their count, then the name, x-coordinate and
+ *     y-coordinate of each stop.</li>
+ *     <li>The routes: their count, then the type, name and number of each
+ *     route, followed by the number of stops on it and the index (in the
+ *     stops section) of each of those stops.</li>
+ *     <li>The vehicles: their count, then the type, id, capacity and route
+ *     number of each vehicle, followed by its carriage count (for trains),
+ *     registration number (for buses) or ferry type (for ferries).</li>
+ *     <li>If the flag is set, the routing information: the number of stops in
+ *     the routing matrix, the index (in the stops section) of each of those
+ *     stops, and then each row of the matrix as written by
+ *     {@link RoutingMatrix#writeRow(int, java.nio.ByteBuffer)}.</li>
+ * </ol>
+ *
+ * <p>Snapshots are written through a {@link FileChannel}, and read from a
+ * memory-mapped view of the file, a window at a time.
+ */
+class NetworkSnapshot {
+    // the number identifying a network snapshot file
+    private static final int MAGIC = 0x544E5350;
+
+    // the version of the snapshot format
+    private static final int VERSION = 1;
+
+    // the flag set when a snapshot holds routing information
+    private static final int ROUTING_FLAG = 1;
+
+    // the size of the buffer used to write a snapshot
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // the largest part of a file which is mapped at once when reading
+    private static final long WINDOW_SIZE = 1 << 30;
+
+    // the stops, routes and vehicles in the snapshot
+    private List<Stop> stops;
+    private List<Route> routes;
+    private List<PublicTransport> vehicles;
+
+    // the first route read with each route number
+    private Map<Integer, Route> routesByNumber;
+
+    // the routing information in the snapshot, or null if it has none
+    private RoutingMatrix matrix;
+
+    // the channel the snapshot is being read from or written to
+    private FileChannel channel;
+
+    // the current window of the file being read, or the data waiting to be
+    // written
+    private ByteBuffer buffer;
+
+    // the position in the file of the start of the buffer, when reading
+    private long windowStart;
+
+    /*
+     * Creates a new snapshot over the given open channel.
+     */
+    private NetworkSnapshot(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a snapshot of the given stops, routes and vehicles to the file
+     * with the given name, replacing any existing file.
+     *
+     * <p>As in {@link Network#save(String, java.nio.charset.Charset)}, the
+     * snapshot is written to a temporary file in the same directory, which is
+     * then moved over the given file, so that a snapshot which fails part way
+     * through leaves any existing file as it was.
+     *
+     * <p>If routing is included, the current entries of every stop's routing
+     * table are written (see {@link RoutingMatrix#copyOf(List)}).
+     *
+     * @param filename The name of the file to write to.
+     * @param stops The stops of the network.
+     * @param routes The routes of the network.
+     * @param vehicles The vehicles of the network.
+     * @param includeRouting Whether to include routing information.
+     * @throws IOException If any IO exceptions occur whilst writing the file.
+     */
+    static void write(String filename, List<Stop> stops, List<Route> routes,
+                      List<PublicTransport> vehicles, boolean includeRouting)
+            throws IOException {
+        RoutingMatrix matrix = includeRouting ? RoutingMatrix.copyOf(stops)
+                : null;
+
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(),
+                target.getFileName() + ".", ".tmp");
+        try {
+            Network.copyPermissions(target, temporary);
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                NetworkSnapshot snapshot = new NetworkSnapshot(channel);
+                int rowBytes = matrix == null ? 0 : 2 * Integer.BYTES
+                        * matrix.size();
+                snapshot.buffer = ByteBuffer.allocateDirect(
+                        Math.max(BUFFER_SIZE, rowBytes));
+
+                snapshot.writeInt(MAGIC);
+                snapshot.writeInt(VERSION);
+                snapshot.writeInt(matrix == null ? 0 : ROUTING_FLAG);
+                snapshot.writeStops(stops);
+                Map<Stop, Integer> indices = indicesOf(stops);
+                snapshot.writeRoutes(routes, stops, indices);
+                snapshot.writeVehicles(vehicles);
+                if (matrix != null) {
+                    snapshot.writeMatrix(matrix, indices);
+                }
+                snapshot.flush();
+                channel.force(true);
+            }
+            Network.replace(target, temporary);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads the snapshot in the file with the given name.
+     *
+     * <p>The routing tables of the stops read are suspended (see
+     * {@link stops.RoutingTable#suspend()}) before any routes are added to
+     * them. Any routing information in the snapshot is returned as a detached
+     * matrix (see {@link #getMatrix()}).
+     *
+     * @param filename The name of the file to read from.
+     * @return The snapshot read.
+     * @throws IOException If any IO exceptions occur whilst reading the file.
+     * @throws TransportFormatException If the file is not a network snapshot,
+     *         was written in an unsupported version, is incomplete, or holds a
+     *         network which could not be recreated (for example, a vehicle
+     *         whose type does not match its route).
+     */
+    static NetworkSnapshot read(String filename) throws IOException,
+            TransportFormatException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            NetworkSnapshot snapshot = new NetworkSnapshot(channel);
+            snapshot.windowStart = 0;
+            snapshot.buffer = ByteBuffer.allocate(0);
+
+            if (snapshot.readInt() != MAGIC
+                    || snapshot.readInt() != VERSION) {
+                throw new TransportFormatException();
+            }
+            int flags = snapshot.readInt();
+
+            snapshot.readStops();
+            snapshot.readRoutes();
+            snapshot.readVehicles();
+            if ((flags & ROUTING_FLAG) != 0) {
+                snapshot.readMatrix();
+            }
+
+            if (snapshot.windowStart + snapshot.buffer.position()
+                    != channel.size()) {
+                throw new TransportFormatException();
+            }
+            return snapshot;
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | NoNameException | TransportException e) {
+            throw new TransportFormatException();
+        }
+    }
+
+    /**
+     * Returns the stops read from the snapshot, in the order they were
+     * written.
+     *
+     * @return The stops in the snapshot.
+     */
+    List<Stop> getStops() {
+        return this.stops;
+    }
+
+    /**
+     * Returns the routes read from the snapshot, in the order they were
+     * written.
+     *
+     * @return The routes in the snapshot.
+     */
+    List<Route> getRoutes() {
+        return this.routes;
+    }
+
+    /**
+     * Returns the vehicles read from the snapshot, in the order they were
+     * written.
+     *
+     * @return The vehicles in the snapshot.
+     */
+    List<PublicTransport> getVehicles() {
+        return this.vehicles;
+    }
+
+    /**
+     * Returns the routing information read from the snapshot.
+     *
+     * @return The routing matrix in the snapshot, or null if it holds no
+     * routing information.
+     */
+    RoutingMatrix getMatrix() {
+        return this.matrix;
+    }
+
+    /*
+     * Returns the position of each of the given stops in the list, by
+     * identity.
+     */
+    private static Map<Stop, Integer> indicesOf(List<Stop> stops) {
+        Map<Stop, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < stops.size(); i++) {
+            indices.putIfAbsent(stops.get(i), i);
+        }
+        return indices;
+    }
+
+    /*
+     * Writes the stops section.
+     */
+    private void writeStops(List<Stop> stops) throws IOException {
+        writeInt(stops.size());
+        for (Stop stop : stops) {
+            writeString(stop.getName());
+            writeInt(stop.getX());
+            writeInt(stop.getY());
+        }
+    }
+
+    /*
+     * Writes the routes section. Stops on a route which are not in the
+     * network are written as the first network stop with the same name (as
+     * when reading the text format), or as -1 if there is none.
+     */
+    private void writeRoutes(List<Route> routes, List<Stop> stops,
+                             Map<Stop, Integer> indices) throws IOException {
+        writeInt(routes.size());
+        for (Route route : routes) {
+            writeString(route.getType());
+            writeString(route.getName());
+            writeInt(route.getRouteNumber());
+
+            List<Stop> onRoute = route.getStopsOnRoute();
+            writeInt(onRoute.size());
+            for (Stop stop : onRoute) {
+                Integer index = indices.get(stop);
+                writeInt(index != null ? index : indexByName(stop, stops));
+            }
+        }
+    }
+
+    /*
+     * Returns the index of the first of the given stops with the same name as
+     * the given stop, or -1 if there is none.
+     */
+    private static int indexByName(Stop stop, List<Stop> stops) {
+        for (int i = 0; i < stops.size(); i++) {
+            if (stops.get(i).getName().equals(stop.getName())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Writes the vehicles section.
+     */
+    private void writeVehicles(List<PublicTransport> vehicles)
+            throws IOException {
+        writeInt(vehicles.size());
+        for (PublicTransport vehicle : vehicles) {
+            writeString(vehicle.getType());
+            writeInt(vehicle.getId());
+            writeInt(vehicle.getCapacity());
+            writeInt(vehicle.getRoute().getRouteNumber());
+
+            if (vehicle instanceof Train) {
+                writeInt(((Train) vehicle).getCarriageCount());
+            } else if (vehicle instanceof Bus) {
+                writeString(((Bus) vehicle).getRegistrationNumber());
+            } else if (vehicle instanceof Ferry) {
+                writeString(((Ferry) vehicle).getFerryType());
+            }
+        }
+    }
+
+    /*
+     * Writes the routing section.
+     */
+    private void writeMatrix(RoutingMatrix matrix, Map<Stop, Integer> indices)
+            throws IOException {
+        int size = matrix.size();
+        writeInt(size);
+        for (int i = 0; i < size; i++) {
+            writeInt(indices.get(matrix.getStop(i)));
+        }
+
+        for (int row = 0; row < size; row++) {
+            reserve(2 * Integer.BYTES * size);
+            matrix.writeRow(row, this.buffer);
+        }
+    }
+
+    /*
+     * Reads the stops section, suspending the routing table of each stop.
+     */
+    private void readStops() throws IOException {
+        int count = readCount();
+        this.stops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readString();
+            Stop stop = new Stop(name, readInt(), readInt());
+            stop.getRoutingTable().suspend();
+            this.stops.add(stop);
+        }
+    }
+
+    /*
+     * Reads the routes section, adding each route to its stops.
+     */
+    private void readRoutes() throws IOException, TransportFormatException {
+        int count = readCount();
+        this.routes = new ArrayList<>(count);
+        this.routesByNumber = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String type = readString();
+            String name = readString();
+            int number = readInt();
+
+            Route route;
+            switch (type) {
+                case "train":
+                    route = new TrainRoute(name, number);
+                    break;
+                case "bus":
+                    route = new BusRoute(name, number);
+                    break;
+                case "ferry":
+                    route = new FerryRoute(name, number);
+                    break;
+                default:
+                    throw new TransportFormatException();
+            }
+
+            int stopCount = readCount();
+            for (int j = 0; j < stopCount; j++) {
+                route.addStop(this.stops.get(readIndex(this.stops.size())));
+            }
+            this.routes.add(route);
+            this.routesByNumber.putIfAbsent(number, route);
+        }
+    }
+
+    /*
+     * Reads the vehicles section, adding each vehicle to the first route
+     * with its route number (as when reading the text format).
+     */
+    private void readVehicles() throws IOException, TransportException {
+        int count = readCount();
+        this.vehicles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String type = readString();
+            int id = readInt();
+            int capacity = readInt();
+            int number = readInt();
+
+            Route route = this.routesByNumber.get(number);
+            if (route == null || !type.equals(route.getType())) {
+                throw new TransportFormatException();
+            }
+
+            PublicTransport vehicle;
+            switch (type) {
+                case "train":
+                    vehicle = new Train(id, capacity, route, readInt());
+                    break;
+                case "bus":
+                    vehicle = new Bus(id, capacity, route, readString());
+                    break;
+                default:
+                    vehicle = new Ferry(id, capacity, route, readString());
+                    break;
+            }
+            route.addTransport(vehicle);
+            this.vehicles.add(vehicle);
+        }
+    }
+
+    /*
+     * Reads the routing section into a detached matrix over the stops read.
+     */
+    private void readMatrix() throws IOException, TransportFormatException {
+        int size = readCount();
+        List<Stop> matrixStops = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            matrixStops.add(this.stops.get(readIndex(this.stops.size())));
+        }
+
+        this.matrix = new RoutingMatrix(matrixStops);
+        if (this.matrix.size() != size) {
+            throw new TransportFormatException();
+        }
+        for (int row = 0; row < size; row++) {
+            require(2L * Integer.BYTES * size);
+            this.matrix.readRow(row, this.buffer);
+        }
+    }
+
+    /*
+     * Makes room for at least the given number of bytes in the write buffer,
+     * writing out its current contents if necessary.
+     */
+    private void reserve(int bytes) throws IOException {
+        if (this.buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /*
+     * Writes out the current contents of the write buffer.
+     */
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /*
+     * Writes an int.
+     */
+    private void writeInt(int value) throws IOException {
+        reserve(Integer.BYTES);
+        this.buffer.putInt(value);
+    }
+
+    /*
+     * Writes a string, as its length in bytes followed by its UTF-8 encoding.
+     */
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        if (bytes.length > this.buffer.capacity()) {
+            flush();
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                this.channel.write(large);
+            }
+            return;
+        }
+        reserve(bytes.length);
+        this.buffer.put(bytes);
+    }
+
+    /*
+     * Makes sure at least the given number of bytes can be read from the
+     * buffer, mapping the next window of the file if necessary.
+     */
+    private void require(long bytes) throws IOException {
+        if (this.buffer.remaining() >= bytes) {
+            return;
+        }
+
+        long position = this.windowStart + this.buffer.position();
+        long available = this.channel.size() - position;
+        if (available < bytes) {
+            throw new BufferUnderflowException();
+        }
+
+        this.windowStart = position;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                position, Math.min(available, Math.max(WINDOW_SIZE, bytes)));
+    }
+
+    /*
+     * Reads an int.
+     */
+    private int readInt() throws IOException {
+        require(Integer.BYTES);
+        return this.buffer.getInt();
+    }
+
+    /*
+     * Reads a count, which must not be negative.
+     */
+    private int readCount() throws IOException {
+        int count = readInt();
+        if (count < 0) {
+            throw new IllegalArgumentException();
+        }
+        return count;
+    }
+
+    /*
+     * Reads an index, which must be from 0 up to (but not including) the
+     * given size.
+     */
+    private int readIndex(int size) throws IOException {
+        int index = readInt();
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException();
+        }
+        return index;
+    }
+
+    /*
+     * Reads a string written by writeString.
+     */
+    private String readString() throws IOException {
+        int length = readCount();
+        require(length);
+        byte[] bytes = new byte[length];
+        this.buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
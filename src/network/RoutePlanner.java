@@ -0,0 +1,115 @@
+package network;
+
+import stops.Stop;
+import utilities.IndexedMinHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans journeys between pairs of stops in the transportation network.
+ *
+ * <p>Journeys are found with an A* search over the neighbours of each stop
+ * (see {@link Stop#getNeighbours()}), using the Manhattan distance from each
+ * stop to the destination as the estimate of the remaining cost. As the cost
+ * of travelling between neighbours is also their Manhattan distance, this
+ * estimate never exceeds the true remaining cost, so the journeys found are
+ * always the cheapest available.
+ *
+ * <p>Planning a journey only visits the stops the search needs, and never
+ * reads or creates the routing tables of any stop.
+ */
+public class RoutePlanner {
+    // the index used for stops which have no previous stop
+    private static final int NONE = -1;
+
+    /**
+     * Creates a new RoutePlanner.
+     */
+    public RoutePlanner() {
+    }
+
+    /**
+     * Returns the cheapest journey from the given origin to the given
+     * destination.
+     *
+     * <p>If the origin and destination are the same stop, the journey only
+     * contains that stop, at a cost of 0.
+     *
+     * @param origin The stop to start the journey from.
+     * @param destination The stop to finish the journey at.
+     * @return The cheapest journey between the stops, or null if either stop
+     * is null or there is no path from the origin to the destination.
+     */
+    public Journey plan(Stop origin, Stop destination) {
+        if (origin == null || destination == null) {
+            return null;
+        }
+
+        List<Stop> stops = new ArrayList<>();
+        Map<Stop, Integer> indices = new HashMap<>();
+        int[] costs = new int[16];
+        int[] previous = new int[16];
+        IndexedMinHeap open = new IndexedMinHeap(16);
+
+        stops.add(origin);
+        indices.put(origin, 0);
+        costs[0] = 0;
+        previous[0] = NONE;
+        open.offer(0, origin.distanceTo(destination));
+
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            Stop stop = stops.get(current);
+            if (stop.equals(destination)) {
+                return journeyTo(current, stops, costs, previous);
+            }
+
+            for (Stop neighbour : stop.getNeighbours()) {
+                Integer index = indices.get(neighbour);
+                int cost = costs[current] + stop.distanceTo(neighbour);
+
+                // the neighbour has not been reached before
+                if (index == null) {
+                    index = stops.size();
+                    if (index == costs.length) {
+                        costs = Arrays.copyOf(costs, index * 2);
+                        previous = Arrays.copyOf(previous, index * 2);
+                    }
+                    stops.add(neighbour);
+                    indices.put(neighbour, index);
+                    costs[index] = Integer.MAX_VALUE;
+                }
+
+                if (cost < costs[index]) {
+                    costs[index] = cost;
+                    previous[index] = current;
+                    open.offer(index, cost + neighbour.distanceTo(destination));
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Builds the journey ending at the stop with the given index by following
+     * the previous stop of each stop back to the origin.
+     */
+    private static Journey journeyTo(int index, List<Stop> stops, int[] costs,
+                                     int[] previous) {
+        List<Stop> path = new ArrayList<>();
+
+        for (int current = index; current != NONE;
+             current = previous[current]) {
+            path.add(stops.get(current));
+        }
+        Collections.reverse(path);
+
+        return new Journey(path, costs[index]);
+    }
+}
@@ -10,7 +10,7 @@ public class ConcessionPassenger extends Passenger {
     /* Concession id for validating concession fares. */
     private int concessionId;
     /* Whether the concession passenger has a valid concession id */
-    private static final int INVALID = -1;
+    static final int INVALID = -1;
 
     /**
      * Construct a new concession fare passenger with the given name and
@@ -27,7 +27,7 @@ public class ConcessionPassenger extends Passenger {
     public ConcessionPassenger(String name, Stop destination,
                                int concessionId) {
         super(name, destination);
-        renew(concessionId);
+        this.concessionId = validate(concessionId);
     }
 
     /**
@@ -44,12 +44,7 @@ public class ConcessionPassenger extends Passenger {
      * @param newId The ID of the renewed concession card.
      */
     public void renew(int newId) {
-        if (newId < 0 || Integer.toString(newId).length() < 6
-                || !Integer.toString(newId).startsWith("42")) {
-            this.concessionId = INVALID;
-        } else {
-            this.concessionId = newId;
-        }
+        this.concessionId = validate(newId);
     }
 
     /**
@@ -66,4 +61,16 @@ public class ConcessionPassenger extends Passenger {
     public boolean isValid() {
         return this.concessionId != INVALID;
     }
+
+    /*
+     * Returns the given concession id if it is valid (as described in
+     * isValid()), or INVALID otherwise.
+     */
+    static int validate(int id) {
+        if (id < 0 || Integer.toString(id).length() < 6
+                || !Integer.toString(id).startsWith("42")) {
+            return INVALID;
+        }
+        return id;
+    }
 }
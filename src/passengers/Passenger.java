@@ -24,8 +24,7 @@ public class Passenger {
      * @param name The name of the passenger.
      */
     public Passenger(String name) {
-        this.name = name == null ? "" : name.replace("\n", "")
-                .replace("\r", "");
+        this.name = clean(name);
         this.destination = null;
     }
 
@@ -95,8 +94,17 @@ public class Passenger {
      */
     @Override
     public String toString() {
-
+        String name = getName();
         return name.isEmpty() ? "Anonymous passenger" : "Passenger named "
                 + name;
     }
+
+    /*
+     * Returns the given name as it should be stored for a passenger: without
+     * newline characters or carriage returns, or empty if it is null.
+     */
+    static String clean(String name) {
+        return name == null ? "" : name.replace("\n", "")
+                .replace("\r", "");
+    }
 }
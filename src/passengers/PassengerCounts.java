@@ -0,0 +1,198 @@
+package passengers;
+
+import stops.Stop;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Counts of passengers by their destination, for simulating travel demand in
+ * aggregate rather than one passenger at a time.
+ *
+ * <p>Counted passengers have no identity of their own: only the number of
+ * passengers travelling to each destination is recorded, so the memory used
+ * depends on the number of different destinations rather than the number of
+ * passengers. Destinations are kept in the order in which they were first
+ * counted, which is the order in which passengers are taken from the counts
+ * (see {@link #take(int, ObjIntConsumer)}).
+ */
+public class PassengerCounts {
+    // the number of passengers travelling to each destination (or null if
+    // they have no destination), in the order destinations were first counted
+    private Map<Stop, int[]> counts;
+
+    // the total number of passengers counted
+    private int total;
+
+    /**
+     * Creates new empty counts of passengers.
+     */
+    public PassengerCounts() {
+        this.counts = new LinkedHashMap<>();
+        this.total = 0;
+    }
+
+    /**
+     * Counts the given number of passengers travelling to the given
+     * destination.
+     *
+     * <p>If the number of passengers is not positive, nothing is counted.
+     *
+     * @param destination The destination of the passengers, or null if they
+     *                    have no destination.
+     * @param count The number of passengers.
+     * @throws ArithmeticException If the total number of passengers counted
+     * would be greater than {@link Integer#MAX_VALUE}.
+     */
+    public void add(Stop destination, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        total = Math.addExact(total, count);
+        int[] counted = counts.get(destination);
+        if (counted == null) {
+            counts.put(destination, new int[] {count});
+        } else {
+            counted[0] += count;
+        }
+    }
+
+    /**
+     * Moves all the passengers counted by the given counts into these counts,
+     * leaving the given counts empty.
+     *
+     * <p>If the given counts are null, or are these counts, nothing happens.
+     *
+     * @param other The counts whose passengers should be moved.
+     * @throws ArithmeticException If the total number of passengers counted
+     * would be greater than {@link Integer#MAX_VALUE}.
+     */
+    public void addAll(PassengerCounts other) {
+        if (other == null || other == this) {
+            return;
+        }
+
+        // fail before moving any passengers if the total would overflow
+        Math.addExact(total, other.total);
+        for (Map.Entry<Stop, int[]> entry : other.counts.entrySet()) {
+            add(entry.getKey(), entry.getValue()[0]);
+        }
+        other.clear();
+    }
+
+    /**
+     * Returns the number of passengers counted travelling to the given
+     * destination.
+     *
+     * @param destination The destination of the passengers, or null for
+     *                    those with no destination.
+     * @return The number of passengers travelling to the destination.
+     */
+    public int get(Stop destination) {
+        int[] counted = counts.get(destination);
+        return counted == null ? 0 : counted[0];
+    }
+
+    /**
+     * Returns the total number of passengers counted.
+     *
+     * @return The total number of passengers.
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * Returns whether no passengers are counted.
+     *
+     * @return True if there are no passengers counted, false otherwise.
+     */
+    public boolean isEmpty() {
+        return total == 0;
+    }
+
+    /**
+     * Removes all the passengers counted.
+     */
+    public void clear() {
+        counts.clear();
+        total = 0;
+    }
+
+    /**
+     * Removes up to the given number of passengers from these counts,
+     * performing the given action with the number taken for each destination.
+     *
+     * <p>Passengers are taken from destinations in the order in which they
+     * were first counted, taking all the passengers travelling to one
+     * destination before moving on to the next. This takes time proportional
+     * to the number of destinations passengers are taken for, rather than the
+     * number of passengers.
+     *
+     * @param limit The most passengers to take.
+     * @param action The action to perform with each destination, and the
+     *               number of passengers taken who are travelling to it.
+     * @return The number of passengers taken.
+     */
+    public int take(int limit, ObjIntConsumer<Stop> action) {
+        int taken = 0;
+        Iterator<Map.Entry<Stop, int[]>> iterator =
+                counts.entrySet().iterator();
+        while (taken < limit && iterator.hasNext()) {
+            Map.Entry<Stop, int[]> entry = iterator.next();
+            int[] counted = entry.getValue();
+            int count = Math.min(counted[0], limit - taken);
+            counted[0] -= count;
+            if (counted[0] == 0) {
+                iterator.remove();
+            }
+            taken += count;
+            action.accept(entry.getKey(), count);
+        }
+        total -= taken;
+        return taken;
+    }
+
+    /**
+     * Removes the passengers travelling to each destination matching the
+     * given condition from these counts, and returns them as new counts.
+     *
+     * <p>The condition is tested once for each destination passengers are
+     * counted travelling to, in the order in which they were first counted.
+     *
+     * @param condition The condition passengers' destinations must meet to
+     *                  be removed.
+     * @return The counts of the passengers removed.
+     */
+    public PassengerCounts takeIf(Predicate<Stop> condition) {
+        PassengerCounts taken = new PassengerCounts();
+        Iterator<Map.Entry<Stop, int[]>> iterator =
+                counts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Stop, int[]> entry = iterator.next();
+            if (condition.test(entry.getKey())) {
+                iterator.remove();
+                taken.counts.put(entry.getKey(), entry.getValue());
+                taken.total += entry.getValue()[0];
+            }
+        }
+        total -= taken.total;
+        return taken;
+    }
+
+    /**
+     * Performs the given action with each destination passengers are counted
+     * travelling to, and the number of passengers travelling to it.
+     *
+     * @param action The action to perform with each destination and count.
+     */
+    public void forEach(ObjIntConsumer<Stop> action) {
+        for (Map.Entry<Stop, int[]> entry : counts.entrySet()) {
+            action.accept(entry.getKey(), entry.getValue()[0]);
+        }
+    }
+}
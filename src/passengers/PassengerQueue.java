@@ -0,0 +1,286 @@
+package passengers;
+
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+/**
+ * A first-in, first-out queue of the handles of passengers in a
+ * {@link PassengerStore}.
+ *
+ * <p>The queue is linked together through the store itself, so adding and
+ * removing passengers allocates nothing. As a result, a passenger may be in
+ * at most one queue at a time, and must be removed from their queue before
+ * being added to another, or removed from the store.
+ */
+public class PassengerQueue {
+    // the store holding the passengers in the queue
+    private PassengerStore store;
+
+    // the first and last passengers in the queue, or -1 if it is empty
+    private int first;
+    private int last;
+
+    // the number of passengers in the queue
+    private int size;
+
+    /**
+     * Creates a new empty queue of passengers in the given store.
+     *
+     * @param store The store holding the passengers in the queue.
+     */
+    public PassengerQueue(PassengerStore store) {
+        this.store = store;
+        this.first = -1;
+        this.last = -1;
+        this.size = 0;
+    }
+
+    /**
+     * Returns the store holding the passengers in this queue.
+     *
+     * @return The store holding the passengers in the queue.
+     */
+    public PassengerStore getStore() {
+        return store;
+    }
+
+    /**
+     * Adds the passenger with the given handle to the end of this queue.
+     *
+     * <p>If the handle does not identify a passenger in this queue's store,
+     * or the passenger is already in a queue, nothing is added.
+     *
+     * @param passenger The handle of the passenger.
+     * @return True if the passenger was added, false otherwise.
+     */
+    public boolean add(int passenger) {
+        if (!store.contains(passenger) || store.isQueued(passenger)) {
+            return false;
+        }
+
+        store.link(passenger, -1);
+        store.order(passenger);
+        if (last < 0) {
+            first = passenger;
+        } else {
+            store.link(last, passenger);
+        }
+        last = passenger;
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves all the passengers in the given queue to the end of this queue,
+     * in order, leaving the given queue empty.
+     *
+     * <p>The passengers keep their positions in the order in which passengers
+     * joined queues (see {@link #forEachInOrder(Collection, IntConsumer)}).
+     * If the given queue is null, or is this queue, nothing happens.
+     *
+     * @param other The queue whose passengers should be moved.
+     */
+    public void addAll(PassengerQueue other) {
+        if (other == null || other == this || other.isEmpty()) {
+            return;
+        }
+
+        if (last < 0) {
+            first = other.first;
+        } else {
+            store.link(last, other.first);
+        }
+        last = other.last;
+        size += other.size;
+        other.first = -1;
+        other.last = -1;
+        other.size = 0;
+    }
+
+    /**
+     * Returns the passenger at the front of this queue, without removing
+     * them.
+     *
+     * @return The handle of the first passenger, or -1 if the queue is empty.
+     */
+    public int peek() {
+        return first;
+    }
+
+    /**
+     * Returns the passenger after the given passenger in this queue, so that
+     * the queue can be walked from {@link #peek()} without removing anyone.
+     *
+     * @param passenger The handle of a passenger in the queue.
+     * @return The handle of the next passenger, or -1 if the given passenger
+     * is the last.
+     */
+    public int next(int passenger) {
+        return store.linkOf(passenger);
+    }
+
+    /**
+     * Removes the passenger at the front of this queue, and returns them.
+     *
+     * @return The handle of the first passenger, or -1 if the queue is empty.
+     */
+    public int poll() {
+        int passenger = first;
+        if (passenger < 0) {
+            return -1;
+        }
+
+        first = store.linkOf(passenger);
+        if (first < 0) {
+            last = -1;
+        }
+        store.unlink(passenger);
+        size--;
+        return passenger;
+    }
+
+    /**
+     * Removes the passenger with the given handle from this queue.
+     *
+     * <p>This takes time proportional to the passenger's position in the
+     * queue.
+     *
+     * @param passenger The handle of the passenger to remove.
+     * @return True if the passenger was removed, or false if they were not in
+     * the queue.
+     */
+    public boolean remove(int passenger) {
+        int previous = -1;
+        for (int next = first; next >= 0; next = store.linkOf(next)) {
+            if (next == passenger) {
+                int following = store.linkOf(next);
+                if (previous < 0) {
+                    first = following;
+                } else {
+                    store.link(previous, following);
+                }
+                if (last == passenger) {
+                    last = previous;
+                }
+                store.unlink(passenger);
+                size--;
+                return true;
+            }
+            previous = next;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of passengers in this queue.
+     *
+     * @return The number of passengers in the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether this queue is empty.
+     *
+     * @return True if there are no passengers in the queue, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Performs the given action for each passenger in this queue, from front
+     * to back.
+     *
+     * @param action The action to perform with the handle of each passenger.
+     */
+    public void forEach(IntConsumer action) {
+        for (int next = first; next >= 0; next = store.linkOf(next)) {
+            action.accept(next);
+        }
+    }
+
+    /**
+     * Performs the given action for each passenger in the given queues, in
+     * the order in which the passengers joined them.
+     *
+     * <p>All of the queues should hold passengers in the same store. Each
+     * step takes time proportional to the number of queues.
+     *
+     * @param queues The queues whose passengers should be visited.
+     * @param action The action to perform with the handle of each passenger.
+     */
+    public static void forEachInOrder(Collection<PassengerQueue> queues,
+                                      IntConsumer action) {
+        PassengerQueue[] sources = queues.toArray(new PassengerQueue[0]);
+        int[] heads = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            heads[i] = sources[i].first;
+        }
+
+        while (true) {
+            int earliest = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] >= 0 && (earliest < 0
+                        || sources[i].store.orderOf(heads[i])
+                        - sources[earliest].store.orderOf(heads[earliest])
+                        < 0)) {
+                    earliest = i;
+                }
+            }
+            if (earliest < 0) {
+                return;
+            }
+
+            int passenger = heads[earliest];
+            heads[earliest] = sources[earliest].store.linkOf(passenger);
+            action.accept(passenger);
+        }
+    }
+
+    /**
+     * Removes every passenger from the given queues, performing the given
+     * action with each, in the order in which the passengers joined them.
+     *
+     * <p>Each passenger is removed from their queue before the action is
+     * performed with them, so the action may add them to another queue,
+     * including one of the given queues. All of the queues should hold
+     * passengers in the same store, and are empty once this returns.
+     *
+     * @param queues The queues whose passengers should be removed.
+     * @param action The action to perform with the handle of each passenger.
+     */
+    public static void pollAllInOrder(Collection<PassengerQueue> queues,
+                                      IntConsumer action) {
+        PassengerQueue[] sources = queues.toArray(new PassengerQueue[0]);
+        int[] heads = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            heads[i] = sources[i].first;
+            sources[i].first = -1;
+            sources[i].last = -1;
+            sources[i].size = 0;
+        }
+
+        while (true) {
+            int earliest = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] >= 0 && (earliest < 0
+                        || sources[i].store.orderOf(heads[i])
+                        - sources[earliest].store.orderOf(heads[earliest])
+                        < 0)) {
+                    earliest = i;
+                }
+            }
+            if (earliest < 0) {
+                return;
+            }
+
+            PassengerStore source = sources[earliest].store;
+            int passenger = heads[earliest];
+            heads[earliest] = source.linkOf(passenger);
+            source.unlink(passenger);
+            action.accept(passenger);
+        }
+    }
+}
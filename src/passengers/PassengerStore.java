@@ -0,0 +1,657 @@
+package passengers;
+
+import stops.Stop;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Holds passengers compactly, as entries in parallel arrays of primitives,
+ * for simulations with very large numbers of passengers.
+ *
+ * <p>Each passenger in the store is identified by an integer handle. The
+ * destination and concession id of each passenger are stored as integers,
+ * with destinations given as indices into a table of the stops used as
+ * destinations. Names are only stored, in a separate table, once a passenger
+ * with a non-empty name is added, so anonymous passengers take no space for
+ * them. Handles are reused once the passenger they identify is removed, and
+ * only mean anything to the store which gave them out.
+ *
+ * <p>Passengers can also be added as existing {@link Passenger} objects. The
+ * store then holds on to the object, which remains the source of the
+ * passenger's details, so that the same object is given back by
+ * {@link #get(int)}. Passengers added by their details are given back as
+ * views, whose methods read and update the store while the passenger is in
+ * it, and which take up no space in the store.
+ *
+ * <p>Each stop and vehicle holds the passengers at it in a store of its own,
+ * so discarding a stop or vehicle discards its passengers with it, and
+ * passengers are moved from one store to another as they board and leave
+ * vehicles (see {@link #transfer(PassengerStore, int)}). The store takes no
+ * space for passengers until the first is added, and its table of
+ * destinations is emptied whenever the last passenger is removed.
+ *
+ * <p>A store is not safe for use by multiple threads at once.
+ */
+public class PassengerStore {
+    // the concession id of passengers who do not pay concession fares
+    private static final int NOT_CONCESSION = Integer.MIN_VALUE;
+
+    // the link of passengers who are not in any queue
+    private static final int NOT_QUEUED = -3;
+
+    // the link of handles which are not in use by any passenger
+    private static final int UNUSED = -2;
+
+    // the number of passengers the store has room for once the first is added
+    private static final int INITIAL_CAPACITY = 16;
+
+    // the index of the destination of each passenger, or -1 if they have no
+    // destination, or the next unused handle if the handle is not in use
+    private int[] destinations;
+
+    // the concession id of each passenger, if they pay concession fares
+    private int[] concessionIds;
+
+    // the name of each passenger, or null if no passenger has had a name
+    private String[] names;
+
+    // the object added for each passenger, or null if no passenger has been
+    // added as an object
+    private Passenger[] objects;
+
+    // the number of times each handle has been freed, or null if no view has
+    // been given out, so that views can tell when their passenger has left
+    private int[] generations;
+
+    // the passenger after each passenger in the queue they are in, -1 if
+    // they are last, NOT_QUEUED if they are in no queue, or UNUSED if the
+    // handle is not in use
+    private int[] links;
+
+    // the position of each passenger in the order passengers joined queues
+    private int[] orders;
+
+    // the next position in the order passengers join queues
+    private int nextOrder;
+
+    // the number of handles which have ever been used
+    private int used;
+
+    // the first of the handles which have been used but are no longer in
+    // use, linked through their destinations, or -1 if there are none
+    private int firstFree;
+
+    // the number of handles which have been used but are no longer in use
+    private int freeCount;
+
+    // the stops used as destinations, and the index of each of them, or null
+    // if no passenger in the store has had a destination
+    private Stop[] stops;
+    private Map<Stop, Integer> stopIndices;
+
+    /**
+     * Creates a new empty store.
+     */
+    public PassengerStore() {
+        this.destinations = new int[0];
+        this.concessionIds = new int[0];
+        this.links = new int[0];
+        this.orders = new int[0];
+        this.firstFree = -1;
+    }
+
+    /**
+     * Adds a passenger with the given name and destination to the store.
+     *
+     * <p>The name is treated as described in
+     * {@link Passenger#Passenger(String)}.
+     *
+     * @param name The name of the passenger.
+     * @param destination The destination of the passenger, or null if they
+     *                    have no destination.
+     * @return The handle of the new passenger.
+     */
+    public int add(String name, Stop destination) {
+        return put(Passenger.clean(name), destination, NOT_CONCESSION);
+    }
+
+    /**
+     * Adds a passenger paying concession fares with the given name,
+     * destination, and concession id to the store.
+     *
+     * <p>The details are treated as described in
+     * {@link ConcessionPassenger#ConcessionPassenger(String, Stop, int)}.
+     *
+     * @param name The name of the passenger.
+     * @param destination The destination of the passenger, or null if they
+     *                    have no destination.
+     * @param concessionId Identifying number of the passenger's concession
+     *                     card.
+     * @return The handle of the new passenger.
+     */
+    public int addConcession(String name, Stop destination,
+                             int concessionId) {
+        return put(Passenger.clean(name), destination,
+                ConcessionPassenger.validate(concessionId));
+    }
+
+    /**
+     * Adds the given passenger object to the store.
+     *
+     * <p>The object remains the source of the passenger's details, and is
+     * given back by {@link #get(int)} and {@link #remove(int)}. Adding the
+     * same object more than once gives it more than one handle.
+     *
+     * @param passenger The passenger to add.
+     * @return The handle of the passenger, or -1 if the passenger is null.
+     */
+    public int add(Passenger passenger) {
+        if (passenger == null) {
+            return -1;
+        }
+
+        int handle = allocate();
+        setObject(handle, passenger);
+        this.destinations[handle] = -1;
+        this.concessionIds[handle] = NOT_CONCESSION;
+        return handle;
+    }
+
+    /**
+     * Moves the passenger with the given handle in the given store into this
+     * store, and returns their handle in this store.
+     *
+     * <p>The passenger keeps their details, and the object added for them (if
+     * any). Their handle in the given store may then be reused. If the stores
+     * are the same, the passenger stays where they are.
+     *
+     * <p>If the handle does not identify a passenger in the given store, or
+     * the passenger is in a {@link PassengerQueue}, nothing is moved.
+     *
+     * @param source The store holding the passenger.
+     * @param passenger The handle of the passenger in the given store.
+     * @return The handle of the passenger in this store, or -1 if they were
+     * not moved.
+     */
+    public int transfer(PassengerStore source, int passenger) {
+        if (source == null || !source.contains(passenger)
+                || source.isQueued(passenger)) {
+            return -1;
+        }
+        if (source == this) {
+            return passenger;
+        }
+
+        int handle;
+        Passenger object = source.objectOf(passenger);
+        if (object != null) {
+            handle = add(object);
+        } else {
+            handle = put(source.getName(passenger),
+                    source.getDestination(passenger),
+                    source.concessionIds[passenger]);
+        }
+        source.free(passenger);
+        return handle;
+    }
+
+    /**
+     * Returns whether the given handle identifies a passenger in this store.
+     *
+     * @param passenger The handle to check.
+     * @return True if the handle is in use by a passenger, false otherwise.
+     */
+    public boolean contains(int passenger) {
+        return passenger >= 0 && passenger < this.used
+                && this.links[passenger] != UNUSED;
+    }
+
+    /**
+     * Returns the number of passengers in this store.
+     *
+     * @return The number of passengers in the store.
+     */
+    public int size() {
+        return this.used - this.freeCount;
+    }
+
+    /**
+     * Returns the name of the passenger with the given handle.
+     *
+     * @param passenger The handle of the passenger.
+     * @return The name of the passenger.
+     */
+    public String getName(int passenger) {
+        Passenger object = objectOf(passenger);
+        if (object != null) {
+            return object.getName();
+        }
+        String name = this.names == null ? null : this.names[passenger];
+        return name == null ? "" : name;
+    }
+
+    /**
+     * Returns the destination of the passenger with the given handle.
+     *
+     * @param passenger The handle of the passenger.
+     * @return The destination of the passenger, or null if they have no
+     * destination.
+     */
+    public Stop getDestination(int passenger) {
+        Passenger object = objectOf(passenger);
+        if (object != null) {
+            return object.getDestination();
+        }
+        int index = this.destinations[passenger];
+        return index < 0 ? null : this.stops[index];
+    }
+
+    /**
+     * Sets the destination of the passenger with the given handle.
+     *
+     * @param passenger The handle of the passenger.
+     * @param destination The destination of the passenger, or null if they
+     *                    have no destination.
+     */
+    public void setDestination(int passenger, Stop destination) {
+        Passenger object = objectOf(passenger);
+        if (object != null) {
+            object.setDestination(destination);
+        } else {
+            this.destinations[passenger] = indexOf(destination);
+        }
+    }
+
+    /**
+     * Returns whether the passenger with the given handle pays concession
+     * fares (whether or not their concession is valid).
+     *
+     * @param passenger The handle of the passenger.
+     * @return True if the passenger pays concession fares, false otherwise.
+     */
+    public boolean isConcession(int passenger) {
+        Passenger object = objectOf(passenger);
+        if (object != null) {
+            return object instanceof ConcessionPassenger;
+        }
+        return this.concessionIds[passenger] != NOT_CONCESSION;
+    }
+
+    /**
+     * Returns the passenger with the given handle.
+     *
+     * <p>If the passenger was added as an object, that object is returned.
+     * Otherwise, a new view of the passenger is returned, which is a
+     * {@link ConcessionPassenger} if the passenger pays concession fares.
+     * Nothing is added to the store for the view.
+     *
+     * <p>While the passenger is in this store, the view reads and updates
+     * their details in it. Once the passenger is removed from the store, or
+     * moved to another one, the view keeps the details they last had through
+     * it, and no longer affects the store, even if the handle is reused.
+     *
+     * @param passenger The handle of the passenger.
+     * @return The passenger with the given handle.
+     */
+    public Passenger get(int passenger) {
+        Passenger object = objectOf(passenger);
+        if (object != null) {
+            return object;
+        }
+
+        if (this.generations == null) {
+            this.generations = new int[this.links.length];
+        }
+        return isConcession(passenger)
+                ? new ConcessionView(this, passenger)
+                : new View(this, passenger);
+    }
+
+    /**
+     * Returns whether the given passenger object is the passenger with the
+     * given handle, that is, whether it is the object they were added as, or
+     * a view of them given by {@link #get(int)} while they have the handle.
+     *
+     * @param passenger The handle of the passenger.
+     * @param object The passenger object to compare to.
+     * @return True if the object is the passenger with the handle, false
+     * otherwise.
+     */
+    public boolean isSame(int passenger, Passenger object) {
+        if (object == null || !contains(passenger)) {
+            return false;
+        }
+        if (object instanceof View) {
+            View view = (View) object;
+            return view.store == this && view.handle == passenger
+                    && view.isCurrent();
+        }
+        if (object instanceof ConcessionView) {
+            ConcessionView view = (ConcessionView) object;
+            return view.store == this && view.handle == passenger
+                    && view.isCurrent();
+        }
+        return objectOf(passenger) == object;
+    }
+
+    /**
+     * Removes the passenger with the given handle from this store, so that
+     * the handle may be reused, and returns the passenger.
+     *
+     * <p>If the passenger was added as an object, that object is returned. Otherwise, a new passenger object with the same details is
+     * returned, which does not depend on this store.
+     *
+     * <p>If the handle does not identify a passenger in this store, or the
+     * passenger is in a {@link PassengerQueue}, nothing is removed.
+     *
+     * @param passenger The handle of the passenger.
+     * @return The passenger which was removed, or null if no passenger was
+     * removed.
+     */
+    public Passenger remove(int passenger) {
+        if (!contains(passenger) || isQueued(passenger)) {
+            return null;
+        }
+
+        Passenger removed = objectOf(passenger);
+        if (removed == null) {
+            removed = detach(passenger);
+        }
+        free(passenger);
+        return removed;
+    }
+
+    /*
+     * Returns whether the given passenger is in a queue.
+     */
+    boolean isQueued(int passenger) {
+        return this.links[passenger] != NOT_QUEUED;
+    }
+
+    /*
+     * Returns the passenger after the given passenger in the queue they are
+     * in, or -1 if they are the last.
+     */
+    int linkOf(int passenger) {
+        return this.links[passenger];
+    }
+
+    /*
+     * Sets the passenger after the given passenger in the queue they are in,
+     * or NOT_QUEUED if they have left it.
+     */
+    void link(int passenger, int next) {
+        this.links[passenger] = next;
+    }
+
+    /*
+     * Records that the given passenger has left their queue.
+     */
+    void unlink(int passenger) {
+        this.links[passenger] = NOT_QUEUED;
+    }
+
+    /*
+     * Returns the position of the given passenger in the order in which
+     * passengers joined their queues.
+     */
+    int orderOf(int passenger) {
+        return this.orders[passenger];
+    }
+
+    /*
+     * Records that the given passenger has just joined a queue.
+     */
+    void order(int passenger) {
+        this.orders[passenger] = this.nextOrder++;
+    }
+
+    /*
+     * Adds a passenger with the given name, which has already been cleaned,
+     * destination, and concession id, returning their handle.
+     */
+    private int put(String name, Stop destination, int concessionId) {
+        int handle = allocate();
+        if (!name.isEmpty()) {
+            if (this.names == null) {
+                this.names = new String[this.links.length];
+            }
+            this.names[handle] = name;
+        }
+        this.destinations[handle] = indexOf(destination);
+        this.concessionIds[handle] = concessionId;
+        return handle;
+    }
+
+    /*
+     * Returns a new passenger object with the details of the given passenger,
+     * who was added by their details.
+     */
+    private Passenger detach(int passenger) {
+        int concessionId = this.concessionIds[passenger];
+        return concessionId == NOT_CONCESSION
+                ? new Passenger(getName(passenger), getDestination(passenger))
+                : new ConcessionPassenger(getName(passenger),
+                getDestination(passenger), concessionId);
+    }
+
+    /*
+     * Records the given object as the given passenger's.
+     */
+    private void setObject(int passenger, Passenger object) {
+        if (this.objects == null) {
+            this.objects = new Passenger[this.links.length];
+        }
+        this.objects[passenger] = object;
+    }
+
+    /*
+     * Returns an unused handle, growing the store if there are none, and
+     * marks it as in use by a passenger in no queue.
+     */
+    private int allocate() {
+        int handle;
+        if (this.firstFree >= 0) {
+            handle = this.firstFree;
+            this.firstFree = this.destinations[handle];
+            this.freeCount--;
+        } else {
+            if (this.used == this.links.length) {
+                grow();
+            }
+            handle = this.used++;
+        }
+        this.links[handle] = NOT_QUEUED;
+        return handle;
+    }
+
+    /*
+     * Marks the given handle as no longer in use, so that it may be reused,
+     * emptying the store if it was the last passenger.
+     */
+    private void free(int passenger) {
+        if (this.names != null) {
+            this.names[passenger] = null;
+        }
+        if (this.objects != null) {
+            this.objects[passenger] = null;
+        }
+        if (this.generations != null) {
+            this.generations[passenger]++;
+        }
+        this.links[passenger] = UNUSED;
+        this.destinations[passenger] = this.firstFree;
+        this.firstFree = passenger;
+        this.freeCount++;
+
+        // no handles are in use, so every handle and destination is forgotten
+        if (this.freeCount == this.used) {
+            this.used = 0;
+            this.freeCount = 0;
+            this.firstFree = -1;
+            this.stops = null;
+            this.stopIndices = null;
+        }
+    }
+
+    /*
+     * Doubles the number of passengers the store has room for.
+     */
+    private void grow() {
+        int capacity = Math.max(this.links.length * 2, INITIAL_CAPACITY);
+        this.destinations = Arrays.copyOf(this.destinations, capacity);
+        this.concessionIds = Arrays.copyOf(this.concessionIds, capacity);
+        this.links = Arrays.copyOf(this.links, capacity);
+        this.orders = Arrays.copyOf(this.orders, capacity);
+        if (this.names != null) {
+            this.names = Arrays.copyOf(this.names, capacity);
+        }
+        if (this.objects != null) {
+            this.objects = Arrays.copyOf(this.objects, capacity);
+        }
+        if (this.generations != null) {
+            this.generations = Arrays.copyOf(this.generations, capacity);
+        }
+    }
+
+    /*
+     * Returns the object for the given passenger, or null if they only have
+     * their details.
+     */
+    private Passenger objectOf(int passenger) {
+        return this.objects == null ? null : this.objects[passenger];
+    }
+
+    /*
+     * Returns the index of the given stop in the table of destinations,
+     * adding it if it is not there yet, or -1 if it is null.
+     */
+    private int indexOf(Stop stop) {
+        if (stop == null) {
+            return -1;
+        }
+
+        if (this.stopIndices == null) {
+            this.stops = new Stop[INITIAL_CAPACITY];
+            this.stopIndices = new IdentityHashMap<>();
+        }
+        Integer index = this.stopIndices.get(stop);
+        if (index == null) {
+            index = this.stopIndices.size();
+            if (index == this.stops.length) {
+                this.stops = Arrays.copyOf(this.stops, index * 2);
+            }
+            this.stops[index] = stop;
+            this.stopIndices.put(stop, index);
+        }
+        return index;
+    }
+
+    /*
+     * Returns whether the given handle has not been freed since it had the
+     * given generation.
+     */
+    private boolean isCurrent(int passenger, int generation) {
+        return this.generations[passenger] == generation;
+    }
+
+    /*
+     * A view of a passenger held in a store by their details.
+     */
+    private static class View extends Passenger {
+        // the store holding the passenger, the passenger's handle, and the
+        // generation of the handle when the view was created
+        private PassengerStore store;
+        private int handle;
+        private int generation;
+
+        private View(PassengerStore store, int handle) {
+            super(store.getName(handle), store.getDestination(handle));
+            this.store = store;
+            this.handle = handle;
+            this.generation = store.generations[handle];
+        }
+
+        private boolean isCurrent() {
+            return store.isCurrent(handle, generation);
+        }
+
+        @Override
+        public void setDestination(Stop destination) {
+            super.setDestination(destination);
+            if (isCurrent()) {
+                store.setDestination(handle, destination);
+            }
+        }
+
+        @Override
+        public Stop getDestination() {
+            return isCurrent() ? store.getDestination(handle)
+                    : super.getDestination();
+        }
+    }
+
+    /*
+     * A view of a passenger paying concession fares held in a store by their
+     * details.
+     */
+    private static class ConcessionView extends ConcessionPassenger {
+        // the store holding the passenger, the passenger's handle, and the
+        // generation of the handle when the view was created
+        private PassengerStore store;
+        private int handle;
+        private int generation;
+
+        private ConcessionView(PassengerStore store, int handle) {
+            super(store.getName(handle), store.getDestination(handle),
+                    store.concessionIds[handle]);
+            this.store = store;
+            this.handle = handle;
+            this.generation = store.generations[handle];
+        }
+
+        private boolean isCurrent() {
+            return store.isCurrent(handle, generation);
+        }
+
+        @Override
+        public void setDestination(Stop destination) {
+            super.setDestination(destination);
+            if (isCurrent()) {
+                store.setDestination(handle, destination);
+            }
+        }
+
+        @Override
+        public Stop getDestination() {
+            return isCurrent() ? store.getDestination(handle)
+                    : super.getDestination();
+        }
+
+        @Override
+        public void expire() {
+            super.expire();
+            if (isCurrent()) {
+                store.concessionIds[handle] = ConcessionPassenger.INVALID;
+            }
+        }
+
+        @Override
+        public void renew(int newId) {
+            super.renew(newId);
+            if (isCurrent()) {
+                store.concessionIds[handle] =
+                        ConcessionPassenger.validate(newId);
+            }
+        }
+
+        @Override
+        public boolean isValid() {
+            return isCurrent()
+                    ? store.concessionIds[handle] != ConcessionPassenger.INVALID
+                    : super.isValid();
+        }
+    }
+}
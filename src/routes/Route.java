@@ -7,8 +7,12 @@ import stops.Stop;
 import utilities.Writeable;
 import vehicles.PublicTransport;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Represents a route in the transportation network.
@@ -85,6 +89,54 @@ public abstract class Route implements Writeable {
         return new ArrayList<>(route);
     }
 
+    /**
+     * Returns whether the given stop is on this route, without copying the
+     * stops on the route (as {@link #getStopsOnRoute()} does).
+     *
+     * @param stop The stop to look for.
+     * @return True if the stop is on the route, or false if it is not (or is
+     * null).
+     */
+    public boolean hasStop(Stop stop) {
+        return stop != null && route.contains(stop);
+    }
+
+    /**
+     * Returns the stop a vehicle at the given current stop reaches next if it
+     * carries on along this route in the direction it came from the given
+     * previous stop, without copying the stops on the route.
+     *
+     * <p>If there is no previous stop, or the vehicle could not have come
+     * from it to the current stop along this route, the vehicle is taken to
+     * be travelling towards the end of the route.
+     *
+     * @param previous The stop the vehicle was at before the current stop, or
+     *                 null if it has not moved.
+     * @param current The stop the vehicle is at.
+     * @return The next stop on the route in the vehicle's direction of
+     * travel, or null if the current stop is at the end of the route in that
+     * direction, or is not on the route.
+     */
+    public Stop nextStop(Stop previous, Stop current) {
+        int first = -1;
+        for (int i = 0; i < route.size(); i++) {
+            if (route.get(i) != current) {
+                continue;
+            }
+            if (first < 0) {
+                first = i;
+            }
+            if (i > 0 && route.get(i - 1) == previous) {
+                return i + 1 < route.size() ? route.get(i + 1) : null;
+            }
+            if (i + 1 < route.size() && route.get(i + 1) == previous) {
+                return i > 0 ? route.get(i - 1) : null;
+            }
+        }
+        return first >= 0 && first + 1 < route.size()
+                ? route.get(first + 1) : null;
+    }
+
     /**
      * Returns the first stop of the route (i.e. the first stop to be added to
      * the route).
@@ -134,6 +186,71 @@ public abstract class Route implements Writeable {
         stop.addNeighbouringStop(previous);
     }
 
+    /**
+     * Removes a stop from the route.
+     *
+     * <p>If the given stop is null, or is not on the route, the route should
+     * remain unchanged.
+     *
+     * <p>Every occurrence of the given stop is removed from the route, and the
+     * stops before and after each occurrence become neighbours of each other
+     * (using {@link Stop#addNeighbouringStop(Stop)}), as they are now adjacent
+     * on the route.
+     *
+     * <p>The given stop stops being a neighbour of the stops it was adjacent
+     * to on this route (using {@link Stop#removeNeighbouringStop(Stop)}),
+     * unless they are still adjacent on one of the stop's other routes. This
+     * route is also removed as a route of the given stop (using
+     * {@link Stop#removeRoute(Route)}).
+     *
+     * @param stop The stop to be removed from this route.
+     */
+    public void removeStop(Stop stop) {
+        if (stop == null || !route.contains(stop)) {
+            return;
+        }
+
+        List<Stop> previousRoute = new ArrayList<>(route);
+        route.removeAll(Collections.singletonList(stop));
+        stop.removeRoute(this);
+
+        // connect the stops which are now adjacent
+        for (int i = 1; i < route.size(); i++) {
+            route.get(i - 1).addNeighbouringStop(route.get(i));
+            route.get(i).addNeighbouringStop(route.get(i - 1));
+        }
+
+        // disconnect the stops which are no longer adjacent on any route
+        for (int i = 1; i < previousRoute.size(); i++) {
+            Stop first = previousRoute.get(i - 1);
+            Stop second = previousRoute.get(i);
+            if ((first.equals(stop) || second.equals(stop))
+                    && !isAdjacentOnAnyRoute(first, second)) {
+                first.removeNeighbouringStop(second);
+                second.removeNeighbouringStop(first);
+            }
+        }
+    }
+
+    /*
+     * Returns true if the given stops are next to each other on any of the
+     * routes of the first stop.
+     */
+    private static boolean isAdjacentOnAnyRoute(Stop first, Stop second) {
+        for (Route other : first.getRoutes()) {
+            List<Stop> stops = other.route;
+            for (int i = 1; i < stops.size(); i++) {
+                Stop previous = stops.get(i - 1);
+                Stop next = stops.get(i);
+                if ((previous.equals(first) && next.equals(second))
+                        || (previous.equals(second) && next.equals(first))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns the public transport vehicles currently on this route.
      *
@@ -236,21 +353,7 @@ public abstract class Route implements Writeable {
      */
     @Override
     public String toString() {
-        StringBuilder builder = new StringBuilder();
-
-        builder.append(getType()).append(",");
-        builder.append(name).append(",").append(routeNumber);
-        builder.append(":");
-
-        for (Stop stop : route) {
-            builder.append(stop.getName()).append("|");
-        }
-
-        if (!route.isEmpty()) {
-            builder.deleteCharAt(builder.length() - 1);
-        }
-
-        return builder.toString();
+        return encode();
     }
 
     /**
@@ -261,8 +364,29 @@ public abstract class Route implements Writeable {
      */
     @Override
     public String encode() {
-        // simply use toString method
-        return this.toString();
+        return Writeable.encodeToString(this);
+    }
+
+    /**
+     * Appends this route, encoded in the same format as specified in
+     * {@link Route#toString()}, to the given appendable.
+     *
+     * @param out The appendable to append the encoded route to.
+     * @throws IOException If an IO error occurs whilst appending.
+     */
+    @Override
+    public void encode(Appendable out) throws IOException {
+        out.append(getType()).append(',');
+        out.append(name).append(',');
+        Writeable.appendInt(out, routeNumber);
+        out.append(':');
+
+        for (int i = 0; i < route.size(); i++) {
+            if (i > 0) {
+                out.append('|');
+            }
+            out.append(route.get(i).getName());
+        }
     }
 
     /*
@@ -353,6 +477,47 @@ public abstract class Route implements Writeable {
      */
     public static Route decode(String routeString, List<Stop> existingStops)
             throws TransportFormatException {
+        if (existingStops == null) {
+            throw new TransportFormatException();
+        }
+        return decode(routeString,
+                stopName -> findStop(stopName, existingStops));
+    }
+
+    /**
+     * Creates a new route object based on the given string representation,
+     * as described in {@link #decode(String, List)}, finding its stops in the
+     * given index of stops by name rather than searching a list.
+     *
+     * <p>Each stop name in the string should be mapped to the stop to add to
+     * the route, which should be the first stop in the network with that
+     * name (see {@link network.Network#findStop(String)}).
+     *
+     * @param routeString The string to decode.
+     * @param stopsByName The stops which currently exist in the transport
+     *                    network, by name.
+     * @return The decoded route object (a BusRoute, TrainRoute, or FerryRoute,
+     *          depending on the type given in the string).
+     * @throws TransportFormatException If the given string or stopsByName map
+     *          is null, or the string is incorrectly formatted, as described
+     *          in {@link #decode(String, List)}.
+     */
+    public static Route decodeIndexed(String routeString,
+                                      Map<String, Stop> stopsByName)
+            throws TransportFormatException {
+        if (stopsByName == null) {
+            throw new TransportFormatException();
+        }
+        return decode(routeString, stopsByName::get);
+    }
+
+    /*
+     * Decodes the given route string, using the given function to find the
+     * stop with each name, which returns null if there is no such stop.
+     */
+    private static Route decode(String routeString,
+                                Function<String, Stop> stopFinder)
+            throws TransportFormatException {
         Route route;
         try {
             // if the last character is a colon, remove
@@ -396,7 +561,7 @@ public abstract class Route implements Writeable {
 
             // for each stop, check that it is valid
             for (String stopName : stops) {
-                Stop stop = findStop(stopName, existingStops);
+                Stop stop = stopFinder.apply(stopName);
                 if (stop == null) {
                     throw new TransportFormatException();
                 }
@@ -0,0 +1,187 @@
+package stops;
+
+import utilities.IndexedMinHeap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A routing index which decides where passengers should travel next, keyed by
+ * their destination rather than by the stop they are waiting at.
+ *
+ * <p>For each destination which is asked about, a single shortest path tree
+ * leading to it is computed over a {@link StopGraph} of the managed stops
+ * (see {@link #manage(Stop)}). The tree is stored as one array holding, for
+ * the index of each stop, the index of the next stop on a cheapest path from
+ * it to the destination. Every stop routing passengers to that destination
+ * then shares the same array, so passengers heading to a small number of
+ * popular destinations only need a small number of arrays, rather than a full
+ * routing table at every stop they wait at.
+ *
+ * <p>Managed stops use this index instead of their routing table when a
+ * passenger is placed at them (see {@link Stop#addPassenger}). Their routing
+ * tables are otherwise unaffected.
+ *
+ * <p>Trees are computed on demand, and only the most recently used trees are
+ * kept, up to the limit given when the index is created. Whenever a neighbour
+ * is added to or removed from a managed stop, the graph and every tree are
+ * discarded, and computed again when they are next needed. Changes to stops
+ * which are only reachable from managed stops are not noticed, so every stop
+ * in the network should be managed by the same index.
+ */
+public class DestinationTrees {
+    // the index used for stops which cannot reach a destination
+    private static final int NONE = -1;
+
+    // the stops managed by this index, in the order they were managed
+    private Set<Stop> stops;
+
+    // the graph the trees are computed over, or null if it must be rebuilt
+    private StopGraph graph;
+
+    // the next stop of each stop towards each destination, by the index of
+    // the destination, from least to most recently used
+    private LinkedHashMap<Integer, int[]> trees;
+
+    // the maximum number of trees held at once
+    private int maximumTrees;
+
+    // the cheapest cost from each stop, reused between searches
+    private int[] costs;
+
+    // the heap used for each search
+    private IndexedMinHeap heap;
+
+    // the number of times the graph has been discarded, after which any
+    // tree, and so any stop's next stop towards a destination, may differ
+    private int version;
+
+    /**
+     * Creates a new DestinationTrees index holding at most the given number of
+     * trees at once.
+     *
+     * <p>If the given limit is less than 1, 1 should be used instead.
+     *
+     * @param maximumTrees The maximum number of trees held at once.
+     */
+    public DestinationTrees(int maximumTrees) {
+        this.stops = new LinkedHashSet<>();
+        this.trees = new LinkedHashMap<>(16, 0.75f, true);
+        this.maximumTrees = Math.max(maximumTrees, 1);
+    }
+
+    /**
+     * Makes the given stop use this index to route passengers placed at it.
+     *
+     * <p>If the given stop is null, the method does nothing.
+     *
+     * @param stop The stop to be managed by this index.
+     */
+    public void manage(Stop stop) {
+        if (stop == null) {
+            return;
+        }
+        stop.useDestinationTrees(this);
+
+        synchronized (this) {
+            this.stops.add(stop);
+            invalidate();
+        }
+    }
+
+    /**
+     * Makes all of the given stops use this index to route passengers placed
+     * at them (see {@link #manage(Stop)}).
+     *
+     * @param stops The stops to be managed by this index.
+     */
+    public void manageAll(Collection<Stop> stops) {
+        for (Stop stop : stops) {
+            manage(stop);
+        }
+    }
+
+    /**
+     * Returns the number of trees currently held by this index.
+     *
+     * @return The number of trees held.
+     */
+    public synchronized int size() {
+        return this.trees.size();
+    }
+
+    /**
+     * Discards the graph and every tree held by this index.
+     */
+    public synchronized void invalidate() {
+        this.graph = null;
+        this.trees.clear();
+        this.version++;
+    }
+
+    /*
+     * Returns the number of times the graph and trees held by this index have
+     * been discarded.
+     */
+    synchronized int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the next stop which passengers at the given stop should be
+     * routed to in order to reach the given destination.
+     *
+     * <p>If either stop is null or not in this index's graph, or the
+     * destination cannot be reached from the given stop, null is returned. If
+     * the stops are the same, the stop itself is returned.
+     *
+     * @param stop The stop the passengers are currently at.
+     * @param destination The destination the passengers are being routed to.
+     * @return The best stop to route the passengers to next.
+     */
+    public synchronized Stop nextStop(Stop stop, Stop destination) {
+        if (this.graph == null) {
+            this.graph = new StopGraph(new ArrayList<>(this.stops));
+            this.costs = new int[this.graph.size()];
+            this.heap = new IndexedMinHeap(this.graph.size());
+        }
+
+        int from = this.graph.indexOf(stop);
+        int to = this.graph.indexOf(destination);
+        if (from == NONE || to == NONE) {
+            return null;
+        }
+
+        int next = treeTowards(to)[from];
+        return next == NONE ? null : this.graph.getStop(next);
+    }
+
+    /*
+     * Returns the tree of next stops towards the destination with the given
+     * index, computing it if it is not currently held.
+     */
+    private int[] treeTowards(int destination) {
+        int[] tree = this.trees.get(destination);
+        if (tree != null) {
+            return tree;
+        }
+
+        tree = new int[this.graph.size()];
+        DijkstraSearch.searchTowards(this.graph, destination, this.costs, tree,
+                this.heap);
+        this.trees.put(destination, tree);
+
+        Iterator<Map.Entry<Integer, int[]>> eldest =
+                this.trees.entrySet().iterator();
+        while (this.trees.size() > this.maximumTrees) {
+            eldest.next();
+            eldest.remove();
+        }
+        return tree;
+    }
+}
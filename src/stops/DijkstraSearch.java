@@ -0,0 +1,219 @@
+package stops;
+
+import utilities.IndexedMinHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A shortest path search from a single stop to every stop reachable from it.
+ *
+ * <p>Stops are given indices as they are reached by the search, and the
+ * search itself works on primitive arrays of those indices, with an
+ * {@link IndexedMinHeap} as its priority queue. The cost of travelling from a
+ * stop to one of its neighbours is the Manhattan distance between them.
+ *
+ * <p>Searches over a {@link StopGraph}, whose stops are already indexed, can
+ * instead be run with {@link #search(StopGraph, int, int[], int[],
+ * IndexedMinHeap)}, which reuses the caller's arrays between searches.
+ */
+class DijkstraSearch {
+    // the index used for stops which have no first stop
+    private static final int NONE = -1;
+
+    // the stops reached by the search, in the order they were reached
+    private List<Stop> stops;
+
+    // the index of each stop reached by the search
+    private Map<Stop, Integer> indices;
+
+    // the cheapest cost from the source to each stop
+    private int[] costs;
+
+    // the index of the first stop after the source on a cheapest path to
+    // each stop
+    private int[] firstStops;
+
+    /**
+     * Creates and runs a new search from the given source stop.
+     *
+     * @param source The stop to search from.
+     */
+    DijkstraSearch(Stop source) {
+        this.stops = new ArrayList<>();
+        this.indices = new HashMap<>();
+        this.costs = new int[16];
+        this.firstStops = new int[16];
+
+        IndexedMinHeap heap = new IndexedMinHeap(16);
+        heap.offer(indexOf(source), 0);
+        this.costs[0] = 0;
+        this.firstStops[0] = 0;
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            Stop stop = this.stops.get(current);
+
+            for (Stop neighbour : stop.getNeighbours()) {
+                int next = indexOf(neighbour);
+                int cost = this.costs[current] + stop.distanceTo(neighbour);
+                if (cost < this.costs[next]) {
+                    this.costs[next] = cost;
+                    this.firstStops[next] = current == 0 ? next
+                            : this.firstStops[current];
+                    heap.offer(next, cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of stops reached by the search, including the
+     * source.
+     *
+     * @return The number of stops reached.
+     */
+    int size() {
+        return this.stops.size();
+    }
+
+    /**
+     * Returns the stop with the given index, where the source has index 0.
+     *
+     * @param index The index of the stop.
+     * @return The stop with the given index.
+     */
+    Stop getStop(int index) {
+        return this.stops.get(index);
+    }
+
+    /**
+     * Returns the cheapest cost from the source to the stop with the given
+     * index.
+     *
+     * @param index The index of the stop.
+     * @return The cost to the stop.
+     */
+    int costTo(int index) {
+        return this.costs[index];
+    }
+
+    /**
+     * Returns the first stop after the source on a cheapest path to the stop
+     * with the given index (or the source itself, for the source).
+     *
+     * @param index The index of the stop.
+     * @return The first stop on the path to the stop.
+     */
+    Stop firstStopTo(int index) {
+        return this.stops.get(this.firstStops[index]);
+    }
+
+    /**
+     * Searches the given graph from the stop with the given source index,
+     * storing the cheapest cost to each stop and the index of the first stop
+     * after the source on a cheapest path to it in the given arrays.
+     *
+     * <p>Stops which are unreachable from the source are given a cost of
+     * Integer.MAX_VALUE and a first stop of -1. The source is given a cost of
+     * 0, and itself as its first stop.
+     *
+     * @param graph The graph to search.
+     * @param source The index of the stop to search from.
+     * @param costs The array to store the cost to each stop in, which must be
+     *              at least as long as the graph's size.
+     * @param firstStops The array to store the first stop to each stop in,
+     *                   which must be at least as long as the graph's size.
+     * @param heap An empty heap to use for the search.
+     */
+    static void search(StopGraph graph, int source, int[] costs,
+                       int[] firstStops, IndexedMinHeap heap) {
+        Arrays.fill(costs, 0, graph.size(), Integer.MAX_VALUE);
+        Arrays.fill(firstStops, 0, graph.size(), NONE);
+        costs[source] = 0;
+        firstStops[source] = source;
+        heap.offer(source, 0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            for (int edge = graph.neighbourStart(current);
+                 edge < graph.neighbourEnd(current); edge++) {
+                int next = graph.neighbourAt(edge);
+                int cost = costs[current] + graph.costAt(edge);
+                if (cost < costs[next]) {
+                    costs[next] = cost;
+                    firstStops[next] = current == source ? next
+                            : firstStops[current];
+                    heap.offer(next, cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the given graph backwards from the stop with the given
+     * destination index, storing the cheapest cost from each stop to the
+     * destination and the index of the next stop on a cheapest path from it in
+     * the given arrays.
+     *
+     * <p>Together, the next stops form a tree rooted at the destination. Stops
+     * which cannot reach the destination are given a cost of
+     * Integer.MAX_VALUE and a next stop of -1. The destination is given a cost
+     * of 0, and itself as its next stop.
+     *
+     * @param graph The graph to search.
+     * @param destination The index of the stop to search towards.
+     * @param costs The array to store the cost from each stop in, which must
+     *              be at least as long as the graph's size.
+     * @param nextStops The array to store the next stop from each stop in,
+     *                  which must be at least as long as the graph's size.
+     * @param heap An empty heap to use for the search.
+     */
+    static void searchTowards(StopGraph graph, int destination, int[] costs,
+                              int[] nextStops, IndexedMinHeap heap) {
+        Arrays.fill(costs, 0, graph.size(), Integer.MAX_VALUE);
+        Arrays.fill(nextStops, 0, graph.size(), NONE);
+        costs[destination] = 0;
+        nextStops[destination] = destination;
+        heap.offer(destination, 0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            for (int edge = graph.predecessorStart(current);
+                 edge < graph.predecessorEnd(current); edge++) {
+                int previous = graph.predecessorAt(edge);
+                int cost = costs[current] + graph.predecessorCostAt(edge);
+                if (cost < costs[previous]) {
+                    costs[previous] = cost;
+                    nextStops[previous] = current;
+                    heap.offer(previous, cost);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns the index of the given stop, giving it the next index if it has
+     * not been reached before.
+     */
+    private int indexOf(Stop stop) {
+        Integer index = this.indices.get(stop);
+        if (index != null) {
+            return index;
+        }
+
+        index = this.stops.size();
+        if (index == this.costs.length) {
+            this.costs = Arrays.copyOf(this.costs, index * 2);
+            this.firstStops = Arrays.copyOf(this.firstStops, index * 2);
+        }
+        this.costs[index] = Integer.MAX_VALUE;
+        this.firstStops[index] = NONE;
+        this.indices.put(stop, index);
+        this.stops.add(stop);
+        return index;
+    }
+}
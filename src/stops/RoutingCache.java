@@ -0,0 +1,166 @@
+package stops;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of routing tables which are computed on demand.
+ *
+ * <p>Stops managed by a routing cache (see {@link #manage(Stop)}) do not keep
+ * a routing table of their own. Instead, the first time the routing table of
+ * such a stop is requested (e.g. through {@link Stop#getRoutingTable()} or
+ * when routing a passenger), it is computed from the current network using
+ * {@link RoutingStrategy#DIJKSTRA} and held in this cache.
+ *
+ * <p>The cache is limited both in the number of tables it holds and in the
+ * total number of entries across those tables. When either limit is
+ * exceeded, the least recently used tables are evicted, and will be computed
+ * again if they are requested later. This caps the memory used for routing
+ * regardless of the size of the network.
+ *
+ * <p>Whenever a neighbour is added to a managed stop, every table in the
+ * cache is discarded, as any of them may have been affected by the change.
+ *
+ * <p>Tables held in the cache are suspended (see
+ * {@link RoutingTable#suspend()}), and are never updated by the
+ * synchronisation of other routing tables in the network.
+ */
+public class RoutingCache {
+    // the cached tables, from least to most recently used
+    private LinkedHashMap<Stop, RoutingTable> tables;
+
+    // the maximum number of tables held in the cache
+    private int maximumTables;
+
+    // the maximum number of entries held across all tables in the cache
+    private long maximumEntries;
+
+    // the number of entries currently held across all tables in the cache
+    private long entryCount;
+
+    // the number of times the cached tables have been discarded; a stop whose
+    // table came from an earlier version routes its waiting passengers again
+    private int version;
+
+    /**
+     * Creates a new empty RoutingCache with the given limits.
+     *
+     * <p>If either limit is less than 1, 1 should be used instead. The most
+     * recently used table is always kept, even if it alone exceeds the
+     * maximum number of entries.
+     *
+     * @param maximumTables The maximum number of tables held in the cache.
+     * @param maximumEntries The maximum number of entries held across all
+     *                       tables in the cache.
+     */
+    public RoutingCache(int maximumTables, long maximumEntries) {
+        this.tables = new LinkedHashMap<>(16, 0.75f, true);
+        this.maximumTables = Math.max(maximumTables, 1);
+        this.maximumEntries = Math.max(maximumEntries, 1);
+        this.entryCount = 0;
+    }
+
+    /**
+     * Makes the given stop use this cache for its routing table, discarding
+     * the routing table it currently holds.
+     *
+     * <p>If the given stop is null, the method does nothing.
+     *
+     * @param stop The stop to be managed by this cache.
+     */
+    public void manage(Stop stop) {
+        if (stop == null) {
+            return;
+        }
+        stop.useRoutingCache(this);
+    }
+
+    /**
+     * Makes all of the given stops use this cache for their routing tables
+     * (see {@link #manage(Stop)}).
+     *
+     * @param stops The stops to be managed by this cache.
+     */
+    public void manageAll(Collection<Stop> stops) {
+        for (Stop stop : stops) {
+            manage(stop);
+        }
+    }
+
+    /**
+     * Returns the number of routing tables currently held in the cache.
+     *
+     * @return The number of cached tables.
+     */
+    public synchronized int size() {
+        return this.tables.size();
+    }
+
+    /**
+     * Returns the total number of routing entries currently held across all
+     * tables in the cache.
+     *
+     * @return The number of cached entries.
+     */
+    public synchronized long getEntryCount() {
+        return this.entryCount;
+    }
+
+    /**
+     * Discards every table held in the cache.
+     */
+    public synchronized void invalidate() {
+        this.tables.clear();
+        this.entryCount = 0;
+        this.version++;
+    }
+
+    /*
+     * Returns the number of times the tables in the cache have been
+     * discarded.
+     */
+    synchronized int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the routing table for the given stop, computing it if it is not
+     * currently held in the cache.
+     *
+     * @param stop The stop whose routing table should be returned.
+     * @return The routing table for the stop.
+     */
+    synchronized RoutingTable tableFor(Stop stop) {
+        RoutingTable table = this.tables.get(stop);
+        if (table != null) {
+            return table;
+        }
+
+        table = new RoutingTable(stop);
+        table.suspend();
+        table.populate(RoutingStrategy.DIJKSTRA);
+        this.tables.put(stop, table);
+        this.entryCount += table.size();
+        evict();
+
+        return table;
+    }
+
+    /*
+     * Evicts the least recently used tables until the cache is within its
+     * limits, always keeping the most recently used table.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Stop, RoutingTable>> eldest =
+                this.tables.entrySet().iterator();
+
+        while (this.tables.size() > 1
+                && (this.tables.size() > this.maximumTables
+                || this.entryCount > this.maximumEntries)) {
+            this.entryCount -= eldest.next().getValue().size();
+            eldest.remove();
+        }
+    }
+}
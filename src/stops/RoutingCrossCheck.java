@@ -0,0 +1,186 @@
+package stops;
+
+import routes.BusRoute;
+import routes.Route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the routing tables maintained by the incremental propagation engine
+ * (see {@link RoutingPropagator}) against a reference all-pairs shortest path
+ * computation, on randomly generated networks.
+ *
+ * <p>Each network is built one stop at a time along several random routes,
+ * so that every connection is propagated as it is added, and is then checked
+ * against the Floyd-Warshall shortest paths over the same connections. Stops
+ * are then removed from routes at random, checking the repaired tables again
+ * after each removal.
+ *
+ * <p>For every pair of stops, the cost in the routing table must equal the
+ * reference cost (or {@link Integer#MAX_VALUE} if the destination cannot be
+ * reached), and the next stop must be a neighbour lying on a shortest path.
+ *
+ * <p>Run with {@code java stops.RoutingCrossCheck [networks [seed]]}. The
+ * first mismatch found is reported, and the check exits with a non-zero
+ * status.
+ */
+class RoutingCrossCheck {
+    // the number of networks checked if none is given
+    private static final int DEFAULT_NETWORKS = 200;
+
+    // the random source used to generate networks
+    private Random random;
+
+    /**
+     * Creates a new cross-check generating networks from the given seed.
+     *
+     * @param seed The seed for generating networks.
+     */
+    RoutingCrossCheck(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Checks the given number of random networks, from the given seed.
+     *
+     * @param args The number of networks to check, and the seed to generate
+     *             them from, both optional.
+     */
+    public static void main(String[] args) {
+        int networks = args.length > 0 ? Integer.parseInt(args[0])
+                : DEFAULT_NETWORKS;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        RoutingCrossCheck check = new RoutingCrossCheck(seed);
+        for (int i = 0; i < networks; i++) {
+            String mismatch = check.checkNetwork();
+            if (mismatch != null) {
+                System.err.println("network " + i + " (seed " + seed + "): "
+                        + mismatch);
+                System.exit(1);
+            }
+        }
+        System.out.println(networks + " networks match the reference "
+                + "shortest paths");
+    }
+
+    /**
+     * Generates one random network, and checks its routing tables as it is
+     * built and as stops are removed from its routes.
+     *
+     * @return A description of the first mismatch found, or null if the
+     * tables match the reference shortest paths throughout.
+     */
+    String checkNetwork() {
+        int size = 2 + random.nextInt(30);
+        List<Stop> stops = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            stops.add(new Stop("s" + i, random.nextInt(20),
+                    random.nextInt(20)));
+        }
+
+        List<Route> routes = new ArrayList<>();
+        int routeCount = 1 + random.nextInt(5);
+        for (int i = 0; i < routeCount; i++) {
+            Route route = new BusRoute("r" + i, i);
+            int length = 2 + random.nextInt(8);
+            Stop previous = null;
+            for (int j = 0; j < length; j++) {
+                Stop stop = stops.get(random.nextInt(size));
+                if (stop != previous) {
+                    route.addStop(stop);
+                    previous = stop;
+                }
+            }
+            routes.add(route);
+        }
+
+        String mismatch = compare(stops);
+        int removals = random.nextInt(4);
+        for (int i = 0; mismatch == null && i < removals; i++) {
+            Route route = routes.get(random.nextInt(routes.size()));
+            List<Stop> onRoute = route.getStopsOnRoute();
+            if (!onRoute.isEmpty()) {
+                route.removeStop(onRoute.get(random.nextInt(onRoute.size())));
+                mismatch = compare(stops);
+            }
+        }
+        return mismatch;
+    }
+
+    /*
+     * Compares the routing table of every given stop with the Floyd-Warshall
+     * shortest paths over the stops' current connections, returning a
+     * description of the first mismatch, or null if there is none.
+     */
+    private static String compare(List<Stop> stops) {
+        int[][] costs = shortestPaths(stops);
+        for (int i = 0; i < stops.size(); i++) {
+            Stop from = stops.get(i);
+            RoutingTable table = from.getRoutingTable();
+            for (int j = 0; j < stops.size(); j++) {
+                if (i == j) {
+                    continue;
+                }
+
+                Stop to = stops.get(j);
+                int expected = costs[i][j];
+                if (table.costTo(to) != expected) {
+                    return "cost from " + from + " to " + to + " is "
+                            + table.costTo(to) + ", expected " + expected;
+                }
+                if (expected == Integer.MAX_VALUE) {
+                    continue;
+                }
+
+                Stop next = table.nextStop(to);
+                int k = stops.indexOf(next);
+                if (k < 0 || !from.getNeighbours().contains(next)
+                        || costs[k][j] == Integer.MAX_VALUE
+                        || from.distanceTo(next) + costs[k][j] != expected) {
+                    return "next stop from " + from + " to " + to + " is "
+                            + next + ", which is not on a shortest path";
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Returns the cost of the shortest path between every pair of the given
+     * stops, travelling between neighbours at the cost of the distance
+     * between them, or Integer.MAX_VALUE where there is no path.
+     */
+    private static int[][] shortestPaths(List<Stop> stops) {
+        int size = stops.size();
+        int[][] costs = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                costs[i][j] = i == j ? 0 : Integer.MAX_VALUE;
+            }
+            Stop from = stops.get(i);
+            for (Stop neighbour : from.getNeighbours()) {
+                int j = stops.indexOf(neighbour);
+                costs[i][j] = Math.min(costs[i][j],
+                        from.distanceTo(neighbour));
+            }
+        }
+
+        for (int k = 0; k < size; k++) {
+            for (int i = 0; i < size; i++) {
+                if (costs[i][k] == Integer.MAX_VALUE) {
+                    continue;
+                }
+                for (int j = 0; j < size; j++) {
+                    if (costs[k][j] != Integer.MAX_VALUE
+                            && costs[i][k] + costs[k][j] < costs[i][j]) {
+                        costs[i][j] = costs[i][k] + costs[k][j];
+                    }
+                }
+            }
+        }
+        return costs;
+    }
+}
@@ -10,15 +10,17 @@ package stops;
  * passengers to in order to get them to that destination, as well as the cost
  * (in Manhattan distance) required to reach the destination when going via that
  * intermediate stop.
+ *
+ * <p>Entries are immutable, so they can be safely shared between threads.
  */
 public class RoutingEntry {
     // the next stop to be visited in order to reach the destination stored
     // in this entry
-    private Stop nextStop;
+    private final Stop nextStop;
 
     // the cost (in Manhattan distance) required to reach the destination
     // stored in this entry
-    private int cost;
+    private final int cost;
     /**
      * Creates a new default RoutingEntry object.
      *
@@ -0,0 +1,369 @@
+package stops;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, network-wide store of routing information for a fixed set of
+ * stops.
+ *
+ * <p>Each stop is assigned a dense integer index, and the matrix holds one row
+ * per stop containing the cost to, and next stop towards, every other stop
+ * (by index). Costs are stored in int arrays, and next stops are stored as
+ * indices in char (unsigned 16-bit) arrays, or int arrays for matrices of
+ * more than 65,534 stops.
+ *
+ * <p>Once attached (see {@link #attach()}), the routing table of each stop in
+ * the matrix becomes a view over its row, answering
+ * {@link RoutingTable#costTo(Stop)}, {@link RoutingTable#nextStop(Stop)} and
+ * {@link RoutingTable#getCosts()} without holding any entries of its own. A
+ * table copies its row back into its own entries as soon as it is changed
+ * (for example, when a neighbour is added), so later changes to the network
+ * are handled exactly as they would have been without the matrix.
+ *
+ * <p>Memory footprint per (stop, destination) pair, on a 64-bit JVM with
+ * compressed references:
+ * <ul>
+ *     <li>RoutingEntry map: a HashMap node (32 bytes), a RoutingEntry
+ *     (24 bytes) and around 5 bytes of hash table slot at the default load
+ *     factor, so roughly 60 bytes per pair, or about 24 GB for 20,000 stops.
+ *     </li>
+ *     <li>RoutingMatrix: a 4 byte cost and a 2 byte next stop index, so 6
+ *     bytes per pair (8 above 65,534 stops), or about 2.4 GB for 20,000
+ *     stops.</li>
+ * </ul>
+ * See {@link #getFootprint()} for the size of a particular matrix.
+ */
+public class RoutingMatrix {
+    // the value stored in a narrow row for a destination with no next stop
+    private static final char NO_NEXT_STOP = Character.MAX_VALUE;
+
+    // the stops in the matrix, in index order
+    private Stop[] stops;
+
+    // the index of each stop in the matrix
+    private Map<Stop, Integer> indices;
+
+    // the cost from each stop (row) to each destination (column)
+    private int[][] costs;
+
+    // the index of the next stop from each stop (row) to each destination
+    // (column), only one of which is used depending on the number of stops
+    private char[][] narrowNextStops;
+    private int[][] wideNextStops;
+
+    /**
+     * Creates a new RoutingMatrix for the given stops.
+     *
+     * <p>Stops are assigned indices in the order in which they appear in the
+     * given list. Null stops, and stops equal to one earlier in the list, are
+     * not given an index.
+     *
+     * <p>Initially, each stop can only reach itself (at a cost of 0, with
+     * itself as the next stop), and every other destination is unreachable.
+     *
+     * @param stops The stops to be stored in the matrix.
+     */
+    public RoutingMatrix(List<Stop> stops) {
+        this.indices = new HashMap<>();
+        List<Stop> indexed = new ArrayList<>();
+
+        for (Stop stop : stops) {
+            if (stop != null && !this.indices.containsKey(stop)) {
+                this.indices.put(stop, indexed.size());
+                indexed.add(stop);
+            }
+        }
+        this.stops = indexed.toArray(new Stop[0]);
+
+        int size = this.stops.length;
+        this.costs = new int[size][];
+        if (size < NO_NEXT_STOP) {
+            this.narrowNextStops = new char[size][];
+        } else {
+            this.wideNextStops = new int[size][];
+        }
+
+        for (int row = 0; row < size; row++) {
+            clearRow(row);
+        }
+    }
+
+    /**
+     * Creates a new RoutingMatrix for the given stops, filled with the
+     * entries currently in each stop's routing table, and then attaches it
+     * (see {@link #attach()}) so those tables no longer hold their own
+     * entries.
+     *
+     * <p>Entries for destinations which are not among the given stops are
+     * discarded.
+     *
+     * @param stops The stops whose routing tables should be compacted.
+     * @return The attached routing matrix.
+     */
+    public static RoutingMatrix compact(List<Stop> stops) {
+        RoutingMatrix matrix = copyOf(stops);
+        matrix.attach();
+        return matrix;
+    }
+
+    /**
+     * Creates a new RoutingMatrix for the given stops, filled with the
+     * entries currently in each stop's routing table, without attaching it.
+     *
+     * <p>Entries for destinations which are not among the given stops are
+     * discarded.
+     *
+     * @param stops The stops whose routing tables should be copied.
+     * @return The detached routing matrix.
+     */
+    public static RoutingMatrix copyOf(List<Stop> stops) {
+        RoutingMatrix matrix = new RoutingMatrix(stops);
+
+        for (int row = 0; row < matrix.size(); row++) {
+            RoutingTable table = matrix.stops[row].getRoutingTable();
+            for (Stop destination : table.getDestinations()) {
+                int column = matrix.indexOf(destination);
+                int next = matrix.indexOf(table.nextStop(destination));
+                if (column >= 0) {
+                    matrix.setEntry(row, column, table.costTo(destination),
+                            next);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Makes the routing table of every stop in this matrix a view over that
+     * stop's row, discarding any entries the tables currently hold.
+     */
+    public void attach() {
+        for (int row = 0; row < this.stops.length; row++) {
+            this.stops[row].getRoutingTable().viewOf(this, row);
+        }
+    }
+
+    /**
+     * Attaches this matrix (see {@link #attach()}) as the complete routing
+     * information for its stops, so that any of their tables which are
+     * suspended (see {@link RoutingTable#suspend()}) are resumed without being
+     * recomputed.
+     *
+     * <p>This should only be used when the matrix is known to hold the
+     * cheapest route between every pair of its stops, such as a matrix read
+     * back from a copy of complete routing tables (see
+     * {@link #readRow(int, ByteBuffer)}), and no other stops are connected to
+     * them.
+     */
+    public void attachResumed() {
+        for (int row = 0; row < this.stops.length; row++) {
+            this.stops[row].getRoutingTable().resumeAsViewOf(this, row);
+        }
+    }
+
+    /**
+     * Returns the number of stops in this matrix.
+     *
+     * @return The number of stops.
+     */
+    public int size() {
+        return this.stops.length;
+    }
+
+    /**
+     * Returns the stop with the given index.
+     *
+     * @param index The index of the stop.
+     * @return The stop with the given index.
+     * @throws IndexOutOfBoundsException If there is no stop with the given
+     *         index.
+     */
+    public Stop getStop(int index) {
+        if (index < 0 || index >= this.stops.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.stops[index];
+    }
+
+    /**
+     * Returns the index of the given stop in this matrix.
+     *
+     * @param stop The stop to find.
+     * @return The index of the stop, or -1 if it is null or not in the matrix.
+     */
+    public int indexOf(Stop stop) {
+        if (stop == null) {
+            return -1;
+        }
+
+        Integer index = this.indices.get(stop);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the cost from the stop with the first index to the stop with
+     * the second index.
+     *
+     * @param from The index of the stop to start from.
+     * @param to The index of the destination stop.
+     * @return The cost to the destination, or Integer.MAX_VALUE if it is
+     * unreachable.
+     */
+    public int costTo(int from, int to) {
+        return this.costs[from][to];
+    }
+
+    /**
+     * Returns the index of the next stop which passengers at the stop with the
+     * first index should be routed to in order to reach the stop with the
+     * second index.
+     *
+     * @param from The index of the stop to start from.
+     * @param to The index of the destination stop.
+     * @return The index of the next stop, or -1 if the destination is
+     * unreachable.
+     */
+    public int nextStopIndex(int from, int to) {
+        if (this.narrowNextStops != null) {
+            char next = this.narrowNextStops[from][to];
+            return next == NO_NEXT_STOP ? -1 : next;
+        }
+        return this.wideNextStops[from][to];
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by this matrix's rows, in
+     * bytes (see the class documentation for a comparison against routing
+     * table entries).
+     *
+     * @return The approximate size of the matrix in bytes.
+     */
+    public long getFootprint() {
+        // array header size on a 64-bit JVM with compressed references
+        final long ARRAY_HEADER = 16;
+        long size = this.stops.length;
+        long nextStopBytes = this.narrowNextStops != null ? Character.BYTES
+                : Integer.BYTES;
+
+        return size * (2 * ARRAY_HEADER + size * (Integer.BYTES
+                + nextStopBytes));
+    }
+
+    /**
+     * Writes the row of the stop with the given index to the given buffer, as
+     * the cost to each destination followed by the index of the next stop
+     * towards each destination (or -1 for none), all as ints in index order.
+     *
+     * @param row The index of the stop whose row should be written.
+     * @param target The buffer to write to, which must have at least
+     *               8 * {@link #size()} bytes remaining.
+     * @throws java.nio.BufferOverflowException If there is not enough room
+     *         remaining in the buffer.
+     */
+    public void writeRow(int row, ByteBuffer target) {
+        int size = this.stops.length;
+        target.asIntBuffer().put(this.costs[row]);
+        target.position(target.position() + size * Integer.BYTES);
+
+        IntBuffer nextStops = target.asIntBuffer();
+        for (int column = 0; column < size; column++) {
+            nextStops.put(nextStopIndex(row, column));
+        }
+        target.position(target.position() + size * Integer.BYTES);
+    }
+
+    /**
+     * Replaces the row of the stop with the given index with one read from
+     * the given buffer, in the format written by
+     * {@link #writeRow(int, ByteBuffer)}.
+     *
+     * @param row The index of the stop whose row should be replaced.
+     * @param source The buffer to read from.
+     * @throws java.nio.BufferUnderflowException If the buffer does not hold a
+     *         complete row.
+     * @throws IllegalArgumentException If any next stop index in the row is
+     *         not -1 or the index of a stop in this matrix.
+     */
+    public void readRow(int row, ByteBuffer source) {
+        int size = this.stops.length;
+        int[] rowCosts = new int[size];
+        source.asIntBuffer().get(rowCosts);
+        source.position(source.position() + size * Integer.BYTES);
+
+        IntBuffer nextStops = source.asIntBuffer();
+        if (nextStops.remaining() < size) {
+            throw new BufferUnderflowException();
+        }
+        for (int column = 0; column < size; column++) {
+            int next = nextStops.get();
+            if (next < -1 || next >= size) {
+                throw new IllegalArgumentException();
+            }
+            setEntry(row, column, rowCosts[column], next);
+        }
+        source.position(source.position() + size * Integer.BYTES);
+    }
+
+    /*
+     * Returns the cost from the stop with the given index to the given
+     * destination, or Integer.MAX_VALUE if it is unreachable or not in the
+     * matrix.
+     */
+    int costTo(int from, Stop destination) {
+        int to = indexOf(destination);
+        return to < 0 ? Integer.MAX_VALUE : this.costs[from][to];
+    }
+
+    /*
+     * Returns the next stop from the stop with the given index towards the
+     * given destination, or null if it is unreachable or not in the matrix.
+     */
+    Stop nextStop(int from, Stop destination) {
+        int to = indexOf(destination);
+        if (to < 0) {
+            return null;
+        }
+
+        int next = nextStopIndex(from, to);
+        return next < 0 ? null : this.stops[next];
+    }
+
+    /*
+     * Records the cost and next stop index (or -1 for none) from the stop
+     * with the first index to the stop with the second index.
+     */
+    void setEntry(int from, int to, int cost, int next) {
+        this.costs[from][to] = cost;
+        if (this.narrowNextStops != null) {
+            this.narrowNextStops[from][to] = next < 0 ? NO_NEXT_STOP
+                    : (char) next;
+        } else {
+            this.wideNextStops[from][to] = next;
+        }
+    }
+
+    /*
+     * Resets the given row so the stop can only reach itself.
+     */
+    void clearRow(int row) {
+        int size = this.stops.length;
+
+        this.costs[row] = new int[size];
+        Arrays.fill(this.costs[row], Integer.MAX_VALUE);
+        if (this.narrowNextStops != null) {
+            this.narrowNextStops[row] = new char[size];
+            Arrays.fill(this.narrowNextStops[row], NO_NEXT_STOP);
+        } else {
+            this.wideNextStops[row] = new int[size];
+            Arrays.fill(this.wideNextStops[row], -1);
+        }
+        setEntry(row, row, 0, row);
+    }
+}
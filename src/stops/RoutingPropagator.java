@@ -0,0 +1,195 @@
+package stops;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Propagates changes to routing tables throughout the network.
+ *
+ * <p>The propagator keeps a worklist of the stops whose routing tables have
+ * changed, along with the destinations in each table which have changed since
+ * that stop was last processed. Processing a stop offers only those changed
+ * entries to each of its neighbours (in the same way as
+ * {@link RoutingTable#transferEntries(Stop)}), and any neighbour whose table
+ * improves is placed on the worklist in turn.
+ *
+ * <p>Since entries are only ever replaced by cheaper ones, propagation always
+ * terminates, and once the worklist has drained no table in the network can
+ * be improved any further.
+ *
+ * <p>Changes are not propagated onwards from suspended tables (see
+ * {@link RoutingTable#suspend()}), as every entry of a suspended table is
+ * propagated once it is resumed.
+ *
+ * <p>When a connection between two stops is removed, the entries which relied
+ * on it are first removed (see {@link #removeRoutesVia(Stop, Stop)}), and then
+ * filled in again from the surviving entries of neighbouring tables, so that
+ * costs can also increase.
+ */
+class RoutingPropagator {
+    // the stops with changes which have not yet been propagated, in the order
+    // in which they were first changed
+    private Deque<Stop> worklist;
+
+    // the destinations which have changed in each stop's routing table since
+    // that stop was last propagated
+    private Map<Stop, Set<Stop>> changed;
+
+    /**
+     * Creates a new RoutingPropagator with an empty worklist.
+     */
+    RoutingPropagator() {
+        this.worklist = new ArrayDeque<>();
+        this.changed = new HashMap<>();
+    }
+
+    /**
+     * Records that the entry for the given destination in the routing table of
+     * the given stop has changed, and so needs to be propagated.
+     *
+     * @param stop The stop whose routing table has changed.
+     * @param destination The destination whose entry has changed.
+     */
+    void markChanged(Stop stop, Stop destination) {
+        Set<Stop> destinations = this.changed.get(stop);
+
+        // the stop is not yet on the worklist
+        if (destinations == null) {
+            destinations = new HashSet<>();
+            this.changed.put(stop, destinations);
+            this.worklist.add(stop);
+        }
+        destinations.add(destination);
+    }
+
+    /**
+     * Records that every entry in the routing table of the given stop needs
+     * to be propagated, unless the stop is managed by a {@link RoutingCache}.
+     *
+     * @param stop The stop whose entire routing table should be propagated.
+     */
+    void markAllChanged(Stop stop) {
+        // tables of stops managed by a routing cache are computed on demand
+        if (stop.getRoutingCache() != null) {
+            return;
+        }
+
+        for (Stop destination : stop.getRoutingTable().getDestinations()) {
+            markChanged(stop, destination);
+        }
+    }
+
+    /**
+     * Removes every entry in the network whose route relies on travelling
+     * from the given stop directly to the given former neighbour, and records
+     * the changes needed to replace them.
+     *
+     * <p>For each destination which the given stop routed to via the former
+     * neighbour, the entries removed are those of the given stop, and of every
+     * stop whose next stops lead to the given stop for that destination. The
+     * same is done for the routes of the former neighbour via the given stop,
+     * as the neighbour learned those routes through the removed connection.
+     * No other entries are affected. Each removed entry is then offered again by
+     * the neighbouring stops which still have an entry for the destination,
+     * once {@link #propagate()} is called.
+     *
+     * @param stop The stop whose neighbour has been removed.
+     * @param neighbour The former neighbour of the stop.
+     */
+    void removeRoutesVia(Stop stop, Stop neighbour) {
+        removeRoutesThrough(stop, neighbour);
+
+        // entries are transferred along connections in the other direction,
+        // so the former neighbour's routes via the stop are also stale
+        if (neighbour.getRoutingCache() == null) {
+            removeRoutesThrough(neighbour, stop);
+        }
+    }
+
+    /*
+     * Removes the routes of the given stop whose next stop is the given
+     * next stop, along with every route which relies on them.
+     */
+    private void removeRoutesThrough(Stop stop, Stop next) {
+        RoutingTable table = stop.getRoutingTable();
+
+        for (Stop destination : table.getDestinations()) {
+            if (!destination.equals(stop)
+                    && next.equals(table.nextStop(destination))) {
+                removeRoutesTo(stop, destination);
+            }
+        }
+    }
+
+    /*
+     * Removes the entry for the given destination from the given stop's table,
+     * along with the entries of all stops routed towards the destination
+     * through it, and marks the surviving entries of their neighbours as
+     * changed so that the removed entries are replaced.
+     */
+    private void removeRoutesTo(Stop stop, Stop destination) {
+        List<Stop> removed = new ArrayList<>();
+        Deque<Stop> pending = new ArrayDeque<>();
+
+        stop.getRoutingTable().removeEntry(destination);
+        pending.add(stop);
+        while (!pending.isEmpty()) {
+            Stop current = pending.poll();
+            removed.add(current);
+
+            // only stops which current transfers entries to can route via it
+            for (Stop other : current.getNeighbours()) {
+                if (other.getRoutingCache() != null
+                        || other.equals(destination)) {
+                    continue;
+                }
+
+                RoutingTable otherTable = other.getRoutingTable();
+                if (current.equals(otherTable.nextStop(destination))) {
+                    otherTable.removeEntry(destination);
+                    pending.add(other);
+                }
+            }
+        }
+
+        for (Stop current : removed) {
+            for (Stop other : current.getNeighbours()) {
+                if (other.getRoutingCache() == null && other.getRoutingTable()
+                        .costTo(destination) != Integer.MAX_VALUE) {
+                    markChanged(other, destination);
+                }
+            }
+        }
+    }
+
+    /**
+     * Propagates all recorded changes, along with any changes they cause,
+     * until no routing table in the network changes any further.
+     */
+    void propagate() {
+        while (!this.worklist.isEmpty()) {
+            Stop stop = this.worklist.poll();
+            Set<Stop> destinations = this.changed.remove(stop);
+            RoutingTable table = stop.getRoutingTable();
+            if (table.isSuspended()) {
+                continue;
+            }
+
+            for (Stop neighbour : stop.getNeighbours()) {
+                int distance = stop.distanceTo(neighbour);
+                for (Stop destination : destinations) {
+                    if (table.transferEntry(neighbour, distance,
+                            destination)) {
+                        markChanged(neighbour, destination);
+                    }
+                }
+            }
+        }
+    }
+}
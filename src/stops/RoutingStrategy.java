@@ -0,0 +1,21 @@
+package stops;
+
+/**
+ * The strategies which can be used to compute the entries of routing tables.
+ *
+ * <p>Both strategies produce the same costs, and next stops which lie on a
+ * cheapest path to each destination.
+ */
+public enum RoutingStrategy {
+    /**
+     * Entries are transferred between neighbouring tables until no table
+     * changes any further (see {@link RoutingTable#synchronise()}).
+     */
+    DISTANCE_VECTOR,
+
+    /**
+     * Each table is computed independently, by a shortest path search from
+     * its own stop over the neighbours of each stop reached.
+     */
+    DIJKSTRA
+}
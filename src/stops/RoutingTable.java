@@ -5,6 +5,8 @@ import java.lang.Integer;
 import exceptions.DuplicateStopException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The class should map destination stops to RoutingEntry objects.
@@ -12,18 +14,30 @@ import java.util.Map;
  * The table is able to redirect passengers from their current stop to the next
  * intermediate stop which they should go to in order to reach their final
  * destination.
+ *
+ * <p>Looking up a destination (costTo(Stop) and nextStop(Stop)) takes constant
+ * time and does not allocate. Any number of threads may look up destinations
+ * while a single thread changes the table.
  */
 public class RoutingTable {
     // the stop stored in this routing table
     private Stop initial;
 
-    // the destination stops for the stop stored in this table and the
-    // routing entries associated with them
-    private Map<Stop, RoutingEntry> entries;
+    // the entries of this table, either held by the table itself or as a
+    // row of a routing matrix, replaced as a whole whenever the table changes
+    // from one to the other
+    private volatile Contents contents;
 
     // the routing entry for the stop stored in this routing table
     private RoutingEntry initialEntry;
 
+    // whether synchronisation with the rest of the network is suspended
+    private boolean suspended;
+
+    // the number of times the entries of this table have changed, so that
+    // the stop can tell when its waiting passengers need to be routed again
+    private int version;
+
     /**
      * Creates a new RoutingTable for the given stop.
      *
@@ -35,9 +49,10 @@ public class RoutingTable {
      */
     public RoutingTable(Stop initialStop) {
         this.initial = initialStop;
-        this.entries = new HashMap<>();
         this.initialEntry = new RoutingEntry(initialStop, 0);
-        this.entries.put(initialStop, initialEntry);
+        Map<Stop, RoutingEntry> entries = new ConcurrentHashMap<>();
+        entries.put(initialStop, initialEntry);
+        this.contents = new Contents(entries, null, 0);
     }
 
     /**
@@ -54,32 +69,219 @@ public class RoutingTable {
      * neighbour stop should simply be the neighbour stop itself.
      *
      * <p>Once the new neighbour has been added as an entry, this table should
-     * be synchronised with the rest of the network using the synchronise() method.
+     * be synchronised with the rest of the network using the synchronise() method,
+     * unless synchronisation is currently suspended (see suspend()).
      *
      * @param neighbour The stop to be added as a neighbour.
      */
     public void addNeighbour(Stop neighbour) {
+        if (neighbour == null) {
+            return;
+        }
+
         int distance = this.initial.distanceTo(neighbour);
-        // create a routing entry for the neighbour stop
-        RoutingEntry neighbourEntry = new RoutingEntry(neighbour, distance);
-
-        // if the table does not contain an entry for the neighbour
-        if (!this.entries.containsKey(neighbour)) {
-            this.entries.put(neighbour, neighbourEntry);
-            this.initial.addNeighbouringStop(neighbour);
-        // if the table does contain an entry for the neighbour
-        } else {
-            // if the newCost to the neighbour is less than the current cost
-            if (this.entries.get(neighbour).getCost() > distance) {
-                this.entries.put(neighbour, neighbourEntry);
-                this.initial.addNeighbouringStop(neighbour);
-            // if the current cost is less than the newCost
-            } else {
-                this.initial.addNeighbouringStop(neighbour);
+
+        // if the table does not contain an entry for the neighbour, or the
+        // distance to the neighbour is less than the current cost
+        if (costTo(neighbour) > distance) {
+            detach().put(neighbour, new RoutingEntry(neighbour, distance));
+            this.version++;
+        }
+        this.initial.addNeighbouringStop(neighbour);
+
+        if (!this.suspended) {
+            this.synchronise();
+        }
+    }
+
+    /**
+     * Removes the given stop as a neighbour of the stop stored in this table,
+     * and repairs the routing of the network to account for it.
+     *
+     * <p>The given stop is also removed as a neighbour of this table's stop
+     * (see {@link Stop#removeNeighbouringStop(Stop)}).
+     *
+     * <p>Every entry in the network whose route relied on travelling from
+     * this table's stop directly to the given neighbour is then recomputed
+     * from the remaining connections, which may increase its cost or make its
+     * destination unreachable (in which case the entry is removed). Entries
+     * whose routes did not use that connection are left unchanged.
+     *
+     * <p>If the given stop is null, the table should remain unchanged.
+     *
+     * @param neighbour The stop to be removed as a neighbour.
+     */
+    public void removeNeighbour(Stop neighbour) {
+        if (neighbour == null) {
+            return;
+        }
+
+        this.initial.removeNeighbouringStop(neighbour);
+
+        RoutingPropagator propagator = new RoutingPropagator();
+        propagator.removeRoutesVia(this.initial, neighbour);
+        propagator.propagate();
+    }
+
+    /**
+     * Suspends synchronisation of this table with the rest of the network.
+     *
+     * <p>While suspended, neighbours added to this table are recorded, but
+     * are not propagated to (or from) any other table in the network. This
+     * allows many stops and routes to be added at once without synchronising
+     * the network after every change.
+     *
+     * <p>Synchronisation is restored using resumeAll(Collection).
+     */
+    public void suspend() {
+        this.suspended = true;
+    }
+
+    /**
+     * Returns whether synchronisation of this table with the rest of the
+     * network is currently suspended.
+     *
+     * @return True if this table is suspended, false otherwise.
+     */
+    public boolean isSuspended() {
+        return this.suspended;
+    }
+
+    /**
+     * Resumes synchronisation for the routing tables of all the given stops,
+     * and synchronises them with the rest of the network.
+     *
+     * <p>All of the tables are synchronised together, so each change is only
+     * propagated through the network once, regardless of how many neighbours
+     * were added while the tables were suspended.
+     *
+     * <p>If the given collection is null, the method should do nothing. Any
+     * null stops in the collection are ignored.
+     *
+     * @param stops The stops whose routing tables should be resumed.
+     */
+    public static void resumeAll(Collection<Stop> stops) {
+        resumeAll(stops, RoutingStrategy.DISTANCE_VECTOR);
+    }
+
+    /**
+     * Resumes synchronisation for the routing tables of all the given stops,
+     * computing their entries using the given strategy.
+     *
+     * <p>With {@link RoutingStrategy#DISTANCE_VECTOR}, this behaves as
+     * resumeAll(Collection). With {@link RoutingStrategy#DIJKSTRA}, each
+     * table is recomputed from its own stop on a single thread (see
+     * populateAll(Collection, int)), which is sufficient when the given stops
+     * include every stop whose routing has changed.
+     *
+     * <p>If the given collection or strategy is null, the method should do
+     * nothing. Any null stops in the collection, or stops managed by a
+     * {@link RoutingCache}, are ignored.
+     *
+     * @param stops The stops whose routing tables should be resumed.
+     * @param strategy The strategy used to compute the tables.
+     */
+    public static void resumeAll(Collection<Stop> stops,
+                                 RoutingStrategy strategy) {
+        if (stops == null || strategy == null) {
+            return;
+        }
+
+        if (strategy == RoutingStrategy.DIJKSTRA) {
+            populateAll(stops, 1);
+            return;
+        }
+
+        RoutingPropagator propagator = new RoutingPropagator();
+        for (Stop stop : stops) {
+            // tables of stops managed by a routing cache are never suspended
+            if (stop == null || stop.getRoutingCache() != null) {
+                continue;
+            }
+
+            stop.getRoutingTable().suspended = false;
+            propagator.markAllChanged(stop);
+        }
+        propagator.propagate();
+    }
+
+    /**
+     * Recomputes the routing tables of all the given stops using
+     * {@link RoutingStrategy#DIJKSTRA}, spreading the work across the given
+     * number of threads.
+     *
+     * <p>Each table is computed by an independent search from its own stop,
+     * over a snapshot of the network taken before any searches begin (see
+     * {@link StopGraph}), and each table is only ever written by the thread
+     * which computed it. The tables are resumed if they were suspended.
+     *
+     * <p>If the given collection is null, the method should do nothing. Any
+     * null stops in the collection, or stops managed by a
+     * {@link RoutingCache}, are ignored. If the given parallelism is less than
+     * 1, 1 should be used instead.
+     *
+     * @param stops The stops whose routing tables should be recomputed.
+     * @param parallelism The number of threads to compute the tables with.
+     */
+    public static void populateAll(Collection<Stop> stops, int parallelism) {
+        if (stops == null) {
+            return;
+        }
+
+        List<Stop> sources = new ArrayList<>();
+        for (Stop stop : stops) {
+            if (stop != null && stop.getRoutingCache() == null) {
+                stop.getRoutingTable().suspended = false;
+                sources.add(stop);
             }
         }
 
-        this.synchronise();
+        StopGraph graph = new StopGraph(sources);
+        int[] indices = new int[sources.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = graph.indexOf(sources.get(i));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+        try {
+            pool.invoke(new RoutingTask(graph, indices, 0, indices.length));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Computes the entries of this routing table using the given strategy.
+     *
+     * <p>With {@link RoutingStrategy#DISTANCE_VECTOR}, this table is
+     * synchronised with the rest of the network (see synchronise()), which may
+     * also update the tables of other stops.
+     *
+     * <p>With {@link RoutingStrategy#DIJKSTRA}, this table's entries are
+     * replaced by the results of a shortest path search from this table's
+     * stop over the neighbours of each stop reached (see
+     * {@link Stop#getNeighbours()}). Only this table is changed. Every stop
+     * reachable from this table's stop has an entry, whose next stop is the
+     * first stop along a cheapest path to that destination.
+     *
+     * <p>If the given strategy is null, the table remains unchanged.
+     *
+     * @param strategy The strategy used to compute this table's entries.
+     */
+    public void populate(RoutingStrategy strategy) {
+        if (strategy == RoutingStrategy.DISTANCE_VECTOR) {
+            synchronise();
+        } else if (strategy == RoutingStrategy.DIJKSTRA) {
+            DijkstraSearch search = new DijkstraSearch(this.initial);
+            Map<Stop, RoutingEntry> populated =
+                    new ConcurrentHashMap<>(search.size() * 4 / 3 + 1);
+
+            for (int i = 0; i < search.size(); i++) {
+                populated.put(search.getStop(i), new RoutingEntry(
+                        search.firstStopTo(i), search.costTo(i)));
+            }
+            replaceEntries(populated);
+        }
     }
 
     /**
@@ -99,6 +301,8 @@ public class RoutingTable {
      * newCost is greater than or equal to the current cost associated with the
      * destination, then the entry should remain unchanged.
      *
+     * <p>If the given destination is null, the table should remain unchanged.
+     *
      * @param destination The destination stop to add/update the entry.
      * @param newCost The new cost to associate with the new/updated entry.
      * @param intermediate The new intermediate/next stop to associate with the
@@ -109,19 +313,21 @@ public class RoutingTable {
      */
     public boolean addOrUpdateEntry(Stop destination, int newCost,
                                     Stop intermediate) {
-        RoutingEntry destinationEntry = new RoutingEntry(intermediate, newCost);
-        boolean changed = false;
+        if (destination == null) {
+            return false;
+        }
 
-        // if the entry does not exist in this table or if the new cost is
-        // less than the current cost
-        if (!this.entries.containsKey(destination) ||
-                newCost < this.entries.get(destination).getCost()) {
-            this.entries.put(destination, destinationEntry);
+        int currentCost = costTo(destination);
 
-            changed = true;
+        // if the entry exists in this table and the new cost is not less than
+        // the current cost, a view is left over its matrix
+        if (currentCost != Integer.MAX_VALUE && newCost >= currentCost) {
+            return false;
         }
 
-        return changed;
+        detach().put(destination, new RoutingEntry(intermediate, newCost));
+        this.version++;
+        return true;
     }
 
     /**
@@ -133,12 +339,18 @@ public class RoutingTable {
      * not currently in this routing table.
      */
     public int costTo(Stop stop) {
-        // if the stop does not exist in this routing table
-        if (!this.entries.containsKey(stop)) {
+        if (stop == null) {
             return Integer.MAX_VALUE;
-        } else {
-            return this.entries.get(stop).getCost();
         }
+
+        Contents current = this.contents;
+        if (current.entries == null) {
+            return current.matrix.costTo(current.row, stop);
+        }
+
+        RoutingEntry entry = current.entries.get(stop);
+        // if the stop does not exist in this routing table
+        return entry == null ? Integer.MAX_VALUE : entry.getCost();
     }
 
     /**
@@ -151,10 +363,9 @@ public class RoutingTable {
     public Map<Stop, Integer> getCosts() {
         // a map of the destinations and the cost associated with them
         Map<Stop, Integer> costs = new HashMap<>();
-        List<Stop> destinations = new ArrayList<>(this.entries.keySet());
 
-        for (Stop destination : destinations) {
-            costs.put(destination, this.entries.get(destination).getCost());
+        for (Stop destination : getDestinations()) {
+            costs.put(destination, costTo(destination));
         }
         return costs;
     }
@@ -180,49 +391,42 @@ public class RoutingTable {
      * given destination.
      */
     public Stop nextStop(Stop destination) {
-        List<Stop> destinations = new ArrayList<>(this.entries.keySet());
-
-        // if the destination is null or does not exist in this table
-        if (destination == null || !destinations.contains(destination)) {
+        if (destination == null) {
             return null;
-        } else {
-            return this.entries.get(destination).getNext();
         }
+
+        Contents current = this.contents;
+        if (current.entries == null) {
+            return current.matrix.nextStop(current.row, destination);
+        }
+
+        RoutingEntry entry = current.entries.get(destination);
+        // if the destination does not exist in this table
+        return entry == null ? null : entry.getNext();
     }
 
     /**
      * Synchronises this routing table with the other tables in the network.
      *
-     * <p>In each iteration, every stop in the network which is reachable by
-     * this table's stop (as returned by traverseNetwork()) must be considered.
-     *
-     * <p>For each stop in the network, each of its neighbours must be
-     * visited, and the entries from the stop must be transferred to each
-     * neighbour (using the transferEntries(Stop) method).
-     *
-     * <p>If any of these transfers results in a change to the table that the
-     * entries are being transferred, then the entire process must be repeated
-     * again. These iterations should continue happening until no changes
-     * occur to any of the tables in the network.
+     * <p>The entries of this table, and of the tables of each of this table's
+     * neighbours, are transferred to their neighbouring stops (as in
+     * transferEntries(Stop)). Whenever a transfer results in a change to
+     * another table, only the entries which changed are then transferred on
+     * from that table, and this continues until no changes occur to any of
+     * the tables in the network.
      *
      * <p>This process is designed to handle changes which need to be
-     * propagated throughout the entire network, which could take more than one
-     * iteration.
+     * propagated throughout the entire network, while only revisiting the
+     * tables which were actually affected by those changes.
      */
     public void synchronise() {
-        List<Stop> destinations = new ArrayList<>(this.entries.keySet());
-
-        for (Stop stop : destinations) {
-            RoutingTable oldStopTable = stop.getRoutingTable();
-            RoutingTable newStopTable = stop.getRoutingTable();
-            for (Stop neighbour : newStopTable.traverseNetwork()) {
-                while (!newStopTable.equals(oldStopTable)) {
-                    // transfer entries to the neighbour until the table is
-                    // not the same as it started
-                    this.transferEntries(neighbour);
-                }
-            }
+        RoutingPropagator propagator = new RoutingPropagator();
+
+        propagator.markAllChanged(this.initial);
+        for (Stop neighbour : this.initial.getNeighbours()) {
+            propagator.markAllChanged(neighbour);
         }
+        propagator.propagate();
     }
 
     /**
@@ -254,60 +458,202 @@ public class RoutingTable {
     public boolean transferEntries (Stop other) {
         // distance from this stop to the other stop
         int distance = this.initial.distanceTo(other);
-        RoutingTable otherTable = other.getRoutingTable();
-        List<Stop> destinations = new ArrayList<>(this.entries.keySet());
-        List<Stop> otherDestinations =
-                new ArrayList<>(otherTable.entries.keySet());
         boolean changed = false;
 
-        for (Stop destination : destinations) {
-            // the cost associated with getting from this stop to the
-            // destination
-            int destinationCost = this.entries.get(destination).getCost();
-
-            if (!otherDestinations.contains(destination)) {
-                RoutingEntry destinationEntry = new RoutingEntry(this.initial
-                        , distance + destinationCost);
-                otherTable.entries.put(destination, destinationEntry);
-                changed = otherTable.addOrUpdateEntry(destination,
-                        destinationCost + distance, this.initial);
-            } else {
-                changed = otherTable.addOrUpdateEntry(destination,
-                        destinationCost + distance, this.initial);
+        for (Stop destination : getDestinations()) {
+            if (transferEntry(other, distance, destination)) {
+                changed = true;
             }
         }
 
         return changed;
     }
 
+    /*
+     * Transfers the entry for the given destination from this table to the
+     * table of the given other stop, which is the given distance away from this
+     * table's stop.
+     *
+     * Returns true if the other stop's table was changed by the transfer.
+     */
+    boolean transferEntry(Stop other, int distance, Stop destination) {
+        int cost = costTo(destination);
+
+        // tables of stops managed by a routing cache are computed on demand
+        if (cost == Integer.MAX_VALUE || other.getRoutingCache() != null) {
+            return false;
+        }
+
+        return other.getRoutingTable().addOrUpdateEntry(destination,
+                cost + distance, this.initial);
+    }
+
+    /*
+     * Returns the destinations which currently have an entry in this table.
+     */
+    Set<Stop> getDestinations() {
+        return getDestinations(this.contents);
+    }
+
+    /*
+     * Returns the destinations which have an entry in the given contents.
+     */
+    private static Set<Stop> getDestinations(Contents current) {
+        if (current.entries != null) {
+            return new HashSet<>(current.entries.keySet());
+        }
+
+        Set<Stop> destinations = new HashSet<>();
+        RoutingMatrix view = current.matrix;
+        for (int column = 0; column < view.size(); column++) {
+            if (view.costTo(current.row, column) != Integer.MAX_VALUE) {
+                destinations.add(view.getStop(column));
+            }
+        }
+        return destinations;
+    }
+
+    /*
+     * Removes the entry for the given destination from this table, unless the
+     * destination is this table's own stop.
+     */
+    void removeEntry(Stop destination) {
+        if (destination == null || destination.equals(this.initial)
+                || costTo(destination) == Integer.MAX_VALUE) {
+            return;
+        }
+
+        detach().remove(destination);
+        this.version++;
+    }
+
+    /*
+     * Returns the number of destinations which currently have an entry in
+     * this table.
+     */
+    int size() {
+        Contents current = this.contents;
+        return current.entries != null ? current.entries.size()
+                : getDestinations(current).size();
+    }
+
+    /*
+     * Replaces all the entries in this table with the given entries, which
+     * must include an entry for this table's stop.
+     */
+    void replaceEntries(Map<Stop, RoutingEntry> replacement) {
+        this.initialEntry = replacement.get(this.initial);
+        this.contents = new Contents(replacement, null, 0);
+        this.version++;
+    }
+
+    /*
+     * Returns the number of times the entries of this table have changed.
+     */
+    int getVersion() {
+        return this.version;
+    }
+
+    /*
+     * Makes this table a view over the given row of the given routing matrix,
+     * discarding the entries it currently holds.
+     */
+    void viewOf(RoutingMatrix matrix, int row) {
+        this.contents = new Contents(null, matrix, row);
+        this.initialEntry = null;
+        this.version++;
+    }
+
+    /*
+     * Makes this table a view over the given row of the given routing matrix
+     * (as in viewOf), which holds complete routing information, and resumes
+     * the table if it was suspended.
+     */
+    void resumeAsViewOf(RoutingMatrix matrix, int row) {
+        viewOf(matrix, row);
+        this.suspended = false;
+    }
+
+    /*
+     * Copies this table's row of its routing matrix back into its own
+     * entries, so that the table can be changed independently of the matrix.
+     * Returns the entries held by the table, which can then be changed. Only
+     * called once a change is known to take effect, so that probing a view
+     * leaves it over its matrix.
+     */
+    private Map<Stop, RoutingEntry> detach() {
+        Contents current = this.contents;
+        if (current.entries != null) {
+            return current.entries;
+        }
+
+        // the entries must be complete before they are published, so that
+        // concurrent lookups always find a whole table
+        Map<Stop, RoutingEntry> detached = new ConcurrentHashMap<>();
+        for (Stop destination : getDestinations(current)) {
+            detached.put(destination, new RoutingEntry(
+                    current.matrix.nextStop(current.row, destination),
+                    current.matrix.costTo(current.row, destination)));
+        }
+        this.initialEntry = detached.get(this.initial);
+        this.contents = new Contents(detached, null, 0);
+        return detached;
+    }
+
     /**
      * Performs a traversal of all the stops in the network, and returns a list
      * of every stop which is reachable from the stop stored in this table.
      *
-     * <p>Firstly create an empty list of Stops and an empty Stack of Stops, push
-     * the RoutingTable's Stop on to the stack, while the stack is not empty,
-     * pop the top Stop (current) from the stack, for each of that stop's
-     * neighbours, if they are not in the list, add them to the stack, then add
-     * the current Stop to the list.
+     * <p>The traversal starts at this table's stop and repeatedly visits the
+     * neighbours of each stop reached. Each stop is recorded as visited when
+     * it is first reached, so no stop is visited or returned more than once.
+     *
+     * <p>The returned list begins with this table's stop, and contains the
+     * other reachable stops in the order in which they were visited.
      *
      * @return All of the stops in the network which are reachable by the stop
      * stored in this table.
      */
     public java.util.List<Stop> traverseNetwork() {
         List<Stop> traversedStops = new ArrayList<>();
-        Stack<Stop> orderedStops = new Stack<>();
+        Set<Stop> visited = new HashSet<>();
+        Deque<Stop> orderedStops = new ArrayDeque<>();
 
+        visited.add(this.initial);
         orderedStops.push(this.initial);
 
         while (!orderedStops.isEmpty()) {
             Stop currentStop = orderedStops.pop();
+            traversedStops.add(currentStop);
             for (Stop neighbour : currentStop.getNeighbours()) {
-                if (!traversedStops.contains(neighbour)) {
-                    orderedStops.add(neighbour);
+                if (visited.add(neighbour)) {
+                    orderedStops.push(neighbour);
                 }
             }
-            traversedStops.add(currentStop);
         }
-        return orderedStops;
+        return traversedStops;
+    }
+
+    /*
+     * The entries of a routing table: either the entries held by the table
+     * itself, or a row of a routing matrix which the table is a view over.
+     * Never changed once created, so that a lookup which reads a table's
+     * contents once always sees one or the other, however the table changes.
+     */
+    private static class Contents {
+        // the entries held by the table, or null if it is a view
+        private final Map<Stop, RoutingEntry> entries;
+
+        // the routing matrix the table is a view over, or null if it holds
+        // its own entries, and the row of the matrix holding its entries
+        private final RoutingMatrix matrix;
+        private final int row;
+
+        private Contents(Map<Stop, RoutingEntry> entries,
+                         RoutingMatrix matrix, int row) {
+            this.entries = entries;
+            this.matrix = matrix;
+            this.row = row;
+        }
     }
 }
@@ -0,0 +1,82 @@
+package stops;
+
+import utilities.IndexedMinHeap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork/join task which computes the routing tables of a range of stops in
+ * a {@link StopGraph}.
+ *
+ * <p>Each table is computed by an independent shortest path search from its
+ * own stop (see {@link RoutingStrategy#DIJKSTRA}), reading only the graph, and
+ * each task only writes the tables of the stops in its own range. Tasks can
+ * therefore run in parallel without sharing any mutable state.
+ */
+@SuppressWarnings("serial")
+class RoutingTask extends RecursiveAction {
+    // the largest number of stops a task computes without splitting
+    private static final int THRESHOLD = 8;
+
+    // the graph to search
+    private StopGraph graph;
+
+    // the indices of the stops whose tables should be computed
+    private int[] sources;
+
+    // the range of sources computed by this task
+    private int from;
+    private int to;
+
+    /**
+     * Creates a new task computing the tables of the sources from the first
+     * position up to (but not including) the second.
+     *
+     * @param graph The graph to search.
+     * @param sources The indices of the stops whose tables should be
+     *                computed.
+     * @param from The position of the first source to compute.
+     * @param to The position after the last source to compute.
+     */
+    RoutingTask(StopGraph graph, int[] sources, int from, int to) {
+        this.graph = graph;
+        this.sources = sources;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (this.to - this.from > THRESHOLD) {
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new RoutingTask(this.graph, this.sources, this.from,
+                            middle),
+                    new RoutingTask(this.graph, this.sources, middle,
+                            this.to));
+            return;
+        }
+
+        int size = this.graph.size();
+        int[] costs = new int[size];
+        int[] firstStops = new int[size];
+        IndexedMinHeap heap = new IndexedMinHeap(size);
+
+        for (int i = this.from; i < this.to; i++) {
+            int source = this.sources[i];
+            DijkstraSearch.search(this.graph, source, costs, firstStops, heap);
+
+            Map<Stop, RoutingEntry> entries = new ConcurrentHashMap<>();
+            for (int stop = 0; stop < size; stop++) {
+                if (costs[stop] != Integer.MAX_VALUE) {
+                    entries.put(this.graph.getStop(stop), new RoutingEntry(
+                            this.graph.getStop(firstStops[stop]),
+                            costs[stop]));
+                }
+            }
+            this.graph.getStop(source).getRoutingTable().replaceEntries(
+                    entries);
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package stops;
 
 import exceptions.NoNameException;
-import exceptions.OverCapacityException;
 import exceptions.TransportFormatException;
 import passengers.Passenger;
+import passengers.PassengerCounts;
+import passengers.PassengerQueue;
+import passengers.PassengerStore;
 import routes.Route;
 import utilities.Writeable;
 import vehicles.PublicTransport;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * Represents a stop in the transportation network.
@@ -20,8 +24,23 @@ public class Stop implements Writeable {
     // the name of the stop
     private String name;
 
-    // the passengers currently waiting at the stop
-    private List<Passenger> passengers;
+    // the store holding the passengers currently waiting at the stop
+    private PassengerStore store;
+
+    // the passengers currently waiting at the stop, as handles into its
+    // store, queued by the stop each is travelling to next (or null if they
+    // have nowhere to go next)
+    private Map<Stop, PassengerQueue> waitingByNextStop;
+
+    // the numbers of passengers counted waiting at the stop, by the stop they
+    // are travelling to next (or null if they have nowhere to go next)
+    private Map<Stop, PassengerCounts> countsByNextStop;
+
+    // the routing table, routing cache or destination index which decided
+    // where the passengers waiting at the stop travel next, and its version
+    // at the time
+    private Object routedBy;
+    private int routedVersion;
 
     // the routes which this stop is located on
     private List<Route> routes;
@@ -36,11 +55,16 @@ public class Stop implements Writeable {
     private int xCoordinate;
     private int yCoordinate;
 
-    // the routing table for this stop
+    // the routing table for this stop, or null if it is managed by a cache
     private RoutingTable routingTable;
 
-    // the intermediate stops passengers at this stop will be travelling to next
-    private Map<Stop, Passenger> nextStopPassengers;
+    // the cache holding the routing table for this stop, or null if the stop
+    // holds its own routing table
+    private RoutingCache routingCache;
+
+    // the index used to route passengers placed at this stop, or null if they
+    // are routed using the stop's routing table
+    private DestinationTrees destinationTrees;
 
     /**
      * Creates a new Stop object with the given name and coordinates.
@@ -67,11 +91,12 @@ public class Stop implements Writeable {
         this.yCoordinate = y;
 
         this.neighbours = new ArrayList<>();
-        this.passengers = new ArrayList<>();
         this.routes = new ArrayList<>();
         this.atStop = new HashSet<>();
         this.routingTable = new RoutingTable(this);
-        this.nextStopPassengers = new HashMap<>();
+        this.store = new PassengerStore();
+        this.waitingByNextStop = new HashMap<>();
+        this.countsByNextStop = new HashMap<>();
     }
 
     /**
@@ -115,6 +140,22 @@ public class Stop implements Writeable {
         routes.add(route);
     }
 
+    /**
+     * Records that this stop is no longer part of the given route.
+     *
+     * <p>If this stop was recorded as part of the route more than once, every
+     * record is removed. If the given route is null, or this stop is not part
+     * of it, the method does nothing.
+     *
+     * @param route The route to be removed.
+     */
+    public void removeRoute(Route route) {
+        if (route == null) {
+            return;
+        }
+        routes.removeAll(Collections.singleton(route));
+    }
+
     /**
      * Returns the routes associated with this stop.
      *
@@ -141,6 +182,10 @@ public class Stop implements Writeable {
      * neighbour, it should not be added as a neighbour, and the method should
      * return early.
      *
+     * <p>If this stop is managed by a {@link RoutingCache}, the neighbour is
+     * not added to a routing table, and instead all of the tables held in the
+     * cache are discarded.
+     *
      * @param neighbour The stop to add as a neighbour.
      */
     public void addNeighbouringStop(Stop neighbour) {
@@ -148,7 +193,49 @@ public class Stop implements Writeable {
             return;
         }
         neighbours.add(neighbour);
-        this.routingTable.addNeighbour(neighbour);
+
+        if (this.destinationTrees != null) {
+            this.destinationTrees.invalidate();
+        }
+        if (this.routingCache != null) {
+            this.routingCache.invalidate();
+        } else {
+            this.routingTable.addNeighbour(neighbour);
+        }
+    }
+
+    /**
+     * Removes the given stop as a neighbour of this stop.
+     *
+     * <p>The neighbour should also be removed from the routing table (see
+     * {@link RoutingTable#removeNeighbour(Stop)}), which repairs the routing
+     * of any passengers who would have travelled between the two stops.
+     *
+     * <p>Only the connection from this stop to the given stop is removed. To
+     * disconnect the stops entirely, this stop should also be removed as a
+     * neighbour of the given stop.
+     *
+     * <p>If the given stop is null, or is not recorded as a neighbour, the
+     * method should return early.
+     *
+     * <p>If this stop is managed by a {@link RoutingCache}, all of the tables
+     * held in the cache are discarded instead.
+     *
+     * @param neighbour The stop to remove as a neighbour.
+     */
+    public void removeNeighbouringStop(Stop neighbour) {
+        if (neighbour == null || !neighbours.remove(neighbour)) {
+            return;
+        }
+
+        if (this.destinationTrees != null) {
+            this.destinationTrees.invalidate();
+        }
+        if (this.routingCache != null) {
+            this.routingCache.invalidate();
+        } else {
+            this.routingTable.removeNeighbour(neighbour);
+        }
     }
 
     /**
@@ -180,18 +267,91 @@ public class Stop implements Writeable {
      * (RoutingTable.nextStop(Stop)). The stop should keep a record of where
      * each passenger waiting at it should be routed to next.
      *
+     * <p>The passenger is queued behind the other passengers routed to the
+     * same next stop, so that vehicles departing towards it only need to look
+     * at that queue (see {@link #transportDepart(PublicTransport, Stop)}).
+     *
+     * <p>If this stop is managed by a {@link DestinationTrees} index, the
+     * index is used to determine the next stop instead of the routing table.
+     *
+     * <p>If the routing of this stop has changed since the passengers waiting
+     * at it were routed (for example, because a neighbour or another stop was
+     * removed from the network), they are all routed again, in the order in
+     * which they arrived, before the passenger is added. Departures do the
+     * same (see {@link #transportDepart(PublicTransport, Stop)}), so no
+     * passenger waits for a next stop which is no longer on their way.
+     *
      * @param passenger The passenger to add to the stop.
      */
     public void addPassenger(Passenger passenger) {
         if (passenger == null) {
             return;
-        } else if (passenger.getDestination() == null) {
-            this.passengers.add(passenger);
-        } else {
-            this.passengers.add(passenger);
-            this.nextStopPassengers.put(this.routingTable.nextStop
-                    (passenger.getDestination()), passenger);
         }
+
+        rerouteIfChanged();
+        queue(store.add(passenger));
+    }
+
+    /**
+     * Places a passenger with the given name and destination at this stop,
+     * as described in {@link #addPassenger(Passenger)}.
+     *
+     * <p>The passenger is held by their details in this stop's passenger
+     * store (see {@link PassengerStore#add(String, Stop)}), without creating
+     * a passenger object, so that very large numbers of passengers take
+     * little memory. An object is only created for them if one is asked for
+     * (see {@link #getWaitingPassengers()}).
+     *
+     * @param name The name of the passenger.
+     * @param destination The destination of the passenger, or null if they
+     *                    have no destination.
+     */
+    public void addPassenger(String name, Stop destination) {
+        rerouteIfChanged();
+        queue(store.add(name, destination));
+    }
+
+    /**
+     * Places the given number of passengers travelling to the given
+     * destination at this stop, as counts rather than individual passengers.
+     *
+     * <p>The passengers are routed as described in
+     * {@link #addPassenger(Passenger)}, once for all of them, and are counted
+     * together with the other passengers at this stop travelling to the same
+     * destination, so the memory used does not depend on the number of
+     * passengers. Counted passengers are not returned by
+     * {@link #getWaitingPassengers()}, but by {@link #getWaitingCounts()}.
+     *
+     * <p>If the number of passengers is not positive, nothing is added.
+     *
+     * @param destination The destination of the passengers, or null if they
+     *                    have no destination.
+     * @param count The number of passengers to add to the stop.
+     */
+    public void addPassengers(Stop destination, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        rerouteIfChanged();
+        count(destination, count);
+    }
+
+    /**
+     * Returns the numbers of passengers counted waiting at this stop (see
+     * {@link #addPassengers(Stop, int)}), by their destination.
+     *
+     * <p>Modifying the returned counts should not result in changes to the
+     * internal state of the class.
+     *
+     * @return The counts of passengers waiting at the stop.
+     */
+    public PassengerCounts getWaitingCounts() {
+        PassengerCounts waiting = new PassengerCounts();
+        for (PassengerCounts counts : this.countsByNextStop.values()) {
+            counts.forEach(waiting::add);
+        }
+        return waiting;
     }
 
     /**
@@ -203,11 +363,35 @@ public class Stop implements Writeable {
      * <p>Modifying the returned list should not result in changes to the
      * internal state of the class.
      *
+     * <p>Passengers added as objects are returned as those same objects, and
+     * others as views of them in the passenger store holding them (see
+     * {@link PassengerStore#get(int)}).
+     *
      * @return The passengers currently waiting at the stop.
      */
     public List<Passenger> getWaitingPassengers() {
+        List<Passenger> waiting = new ArrayList<>();
+        PassengerQueue.forEachInOrder(this.waitingByNextStop.values(),
+                passenger -> waiting.add(store.get(passenger)));
+        return waiting;
+    }
 
-        return new ArrayList<>(passengers);
+    /**
+     * Returns the number of passengers currently waiting at this stop,
+     * including those counted rather than added individually (see
+     * {@link #addPassengers(Stop, int)}).
+     *
+     * @return The number of passengers waiting at the stop.
+     */
+    public int waitingCount() {
+        int count = 0;
+        for (PassengerQueue queue : this.waitingByNextStop.values()) {
+            count += queue.size();
+        }
+        for (PassengerCounts counts : this.countsByNextStop.values()) {
+            count += counts.total();
+        }
+        return count;
     }
 
     /**
@@ -244,9 +428,21 @@ public class Stop implements Writeable {
      * <p>If the given vehicle is already at this stop, or if the vehicle is
      * null, do nothing.
      *
-     * <p>Otherwise, unload all of the passengers on the arriving vehicle (using
-     * {@link PublicTransport#unload()}), and place them at this stop, as well
-     * as recording the vehicle itself at this stop.
+     * <p>Otherwise, unload the passengers on the arriving vehicle who leave it
+     * at this stop, and place them at this stop, moving them from the
+     * vehicle's passenger store into this stop's, as well as recording the
+     * vehicle itself at this stop.
+     *
+     * <p>Passengers leave the vehicle unless this stop would route them to
+     * the stop the vehicle reaches next along its route (see
+     * {@link PublicTransport#getNextStop()}), so passengers whose journey
+     * ends here, or who should change vehicles here, leave it. This is
+     * decided once for each destination of the passengers on board (using
+     * {@link PublicTransport#alight(java.util.function.Predicate)} and
+     * {@link PublicTransport#alightCounts(java.util.function.Predicate)}),
+     * using the routing of this stop as it is on arrival. Passengers counted
+     * on the vehicle who leave it are placed at this stop as counts.
+     * Passengers staying on board are not looked at.
      *
      * <p>This method does not need to check whether this stop is on the given
      * transport's route, or whether the transport's route is a route of this
@@ -259,11 +455,10 @@ public class Stop implements Writeable {
             return;
         }
 
-        List<Passenger> arriving = transport.unload();
-        for (Passenger passenger : arriving) {
-            addPassenger(passenger);
-        }
-
+        rerouteIfChanged();
+        Stop onward = transport.getNextStop();
+        leave(transport, destination -> destination == null
+                || !isRoutedVia(destination, onward));
         atStop.add(transport);
     }
 
@@ -286,6 +481,32 @@ public class Stop implements Writeable {
      * there are still passengers waiting, the remaining passengers should just
      * be left at the stop to wait for the next vehicle.
      *
+     * <p>Only the passengers routed to the next stop are looked at, and they
+     * board in a single step (using
+     * {@link PublicTransport#addPassengers(PassengerQueue)}), after which
+     * they are no longer waiting at this stop. A departure therefore takes
+     * time proportional to the number of passengers boarding, and a full
+     * vehicle still departs.
+     *
+     * <p>Once those passengers have boarded, passengers counted at this stop
+     * and routed to the next stop board in bulk, up to the vehicle's remaining
+     * capacity (using
+     * {@link PublicTransport#addPassengers(PassengerCounts)}), taking time
+     * proportional to the number of their destinations.
+     *
+     * <p>If the routing of this stop has changed since the passengers waiting
+     * at it were routed, they are first routed again (see
+     * {@link #addPassenger(Passenger)}), which takes time proportional to the
+     * number of passengers waiting.
+     *
+     * <p>Passengers who stayed on the vehicle when it arrived did so because
+     * they were routed to the stop it would reach next along its route (see
+     * {@link #transportArrive(PublicTransport)}). If the vehicle is departing
+     * for a different stop, or the routing of this stop has changed, those
+     * passengers with a destination who would not be routed to the given
+     * next stop leave the vehicle and are placed at this stop before anyone
+     * boards.
+     *
      * @param transport The transport currently leaving this stop.
      * @param nextStop The next stop the transport it travelling towards.
      */
@@ -294,16 +515,12 @@ public class Stop implements Writeable {
             return;
         }
 
-        for (Passenger passenger : this.passengers) {
-            if (this.nextStopPassengers.containsKey
-                    (passenger.getDestination())) {
-                try {
-                    transport.addPassenger(passenger);
-                } catch (OverCapacityException e) {
-                    return;
-                }
-            }
+        if (rerouteIfChanged() || nextStop != transport.getNextStop()) {
+            leave(transport, destination -> destination != null
+                    && !isRoutedVia(destination, nextStop));
         }
+        transport.addPassengers(this.waitingByNextStop.get(nextStop));
+        transport.addPassengers(this.countsByNextStop.get(nextStop));
         transport.travelTo(nextStop);
         atStop.remove(transport);
     }
@@ -339,6 +556,10 @@ public class Stop implements Writeable {
      * other has routes R1, R2, and R1 again, their routes can still be
      * considered equal, ignoring duplicates).
      *
+     * <p>A stop is always equal to itself, which is checked before anything
+     * else, and routes are compared without creating any new collections, so
+     * looking up a stop in a list or map which holds it is cheap.
+     *
      * {@inheritDoc}
      *
      * @param other the other object to compare for equality.
@@ -348,6 +569,9 @@ public class Stop implements Writeable {
      */
     @Override
     public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
         if (!(other instanceof Stop)) {
             return false;
         }
@@ -355,17 +579,34 @@ public class Stop implements Writeable {
         return this.name.equals(otherStop.getName())
                 && this.xCoordinate == otherStop.getX()
                 && this.yCoordinate == otherStop.getY()
-                && new HashSet<>(this.routes)
-                .equals(new HashSet<>(otherStop.getRoutes()));
+                && containsAll(this.routes, otherStop.routes)
+                && containsAll(otherStop.routes, this.routes);
     }
 
     /**
+     * Returns a hash code for this stop, combining its name and coordinates,
+     * so that stops with the same name at different locations are spread
+     * across hash-based collections.
      *
      * @return hashcode
      */
     @Override
     public int hashCode() {
-        return this.name.hashCode();
+        return 31 * (31 * this.name.hashCode() + this.xCoordinate)
+                + this.yCoordinate;
+    }
+
+    /*
+     * Returns whether every route in the first list is also in the second,
+     * without creating an iterator or any collections.
+     */
+    private static boolean containsAll(List<Route> routes, List<Route> others) {
+        for (int i = 0; i < routes.size(); i++) {
+            if (!others.contains(routes.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -381,8 +622,7 @@ public class Stop implements Writeable {
      */
     @Override
     public String toString() {
-
-        return name + ":" + xCoordinate + ":" + yCoordinate;
+        return encode();
     }
 
     /**
@@ -393,9 +633,22 @@ public class Stop implements Writeable {
      */
     @Override
     public String encode() {
+        return Writeable.encodeToString(this);
+    }
 
-        // simply use toString method
-        return this.toString();
+    /**
+     * Appends this stop, encoded in the same format as specified in
+     * {@link Stop#toString()}, to the given appendable.
+     *
+     * @param out The appendable to append the encoded stop to.
+     * @throws IOException If an IO error occurs whilst appending.
+     */
+    @Override
+    public void encode(Appendable out) throws IOException {
+        out.append(name).append(':');
+        Writeable.appendInt(out, xCoordinate);
+        out.append(':');
+        Writeable.appendInt(out, yCoordinate);
     }
 
     /**
@@ -457,9 +710,148 @@ public class Stop implements Writeable {
     /**
      * Returns the routing table for this stop.
      *
+     * <p>If this stop is managed by a {@link RoutingCache}, the table is
+     * taken from the cache, and computed first if it is not currently held.
+     *
      * @return The routing table for the stop.
      */
     public RoutingTable getRoutingTable () {
+        if (this.routingCache != null) {
+            return this.routingCache.tableFor(this);
+        }
         return this.routingTable;
     }
+
+    /**
+     * Returns the routing cache which manages this stop's routing table.
+     *
+     * @return The routing cache for this stop, or null if the stop holds its
+     * own routing table.
+     */
+    public RoutingCache getRoutingCache() {
+        return this.routingCache;
+    }
+
+    /**
+     * Returns the destination index used to route passengers placed at this
+     * stop.
+     *
+     * @return The destination index for this stop, or null if passengers are
+     * routed using the stop's routing table.
+     */
+    public DestinationTrees getDestinationTrees() {
+        return this.destinationTrees;
+    }
+
+    /*
+     * Makes this stop use the given index to route passengers placed at it.
+     */
+    void useDestinationTrees(DestinationTrees trees) {
+        this.destinationTrees = trees;
+    }
+
+    /*
+     * Returns the next stop passengers at this stop should be routed to in
+     * order to reach the given destination.
+     */
+    private Stop nextStopTo(Stop destination) {
+        if (this.destinationTrees != null) {
+            return this.destinationTrees.nextStop(this, destination);
+        }
+        return getRoutingTable().nextStop(destination);
+    }
+
+    /*
+     * Queues the passenger with the given handle by the stop they should
+     * travel to next.
+     */
+    private void queue(int passenger) {
+        Stop destination = store.getDestination(passenger);
+        Stop nextStop = destination == null ? null : nextStopTo(destination);
+        this.waitingByNextStop.computeIfAbsent(nextStop,
+                stop -> new PassengerQueue(store)).add(passenger);
+    }
+
+    /*
+     * Counts the given number of passengers travelling to the given
+     * destination by the stop they should travel to next.
+     */
+    private void count(Stop destination, int count) {
+        Stop nextStop = destination == null ? null : nextStopTo(destination);
+        this.countsByNextStop.computeIfAbsent(nextStop,
+                stop -> new PassengerCounts()).add(destination, count);
+    }
+
+    /*
+     * Routes every passenger waiting at this stop again, in the order in
+     * which they arrived, if the routing of the stop has changed since they
+     * were routed, returning whether it had.
+     */
+    private boolean rerouteIfChanged() {
+        Object routing;
+        int version;
+        if (this.destinationTrees != null) {
+            routing = this.destinationTrees;
+            version = this.destinationTrees.getVersion();
+        } else if (this.routingCache != null) {
+            routing = this.routingCache;
+            version = this.routingCache.getVersion();
+        } else {
+            routing = this.routingTable;
+            version = this.routingTable.getVersion();
+        }
+        if (routing == this.routedBy && version == this.routedVersion) {
+            return false;
+        }
+        this.routedBy = routing;
+        this.routedVersion = version;
+
+        if (!this.waitingByNextStop.isEmpty()) {
+            Collection<PassengerQueue> waiting =
+                    this.waitingByNextStop.values();
+            this.waitingByNextStop = new HashMap<>();
+            PassengerQueue.pollAllInOrder(waiting, this::queue);
+        }
+        if (!this.countsByNextStop.isEmpty()) {
+            Collection<PassengerCounts> counted =
+                    this.countsByNextStop.values();
+            this.countsByNextStop = new HashMap<>();
+            for (PassengerCounts counts : counted) {
+                counts.forEach(this::count);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Makes this stop use the given cache for its routing table, discarding
+     * the routing table it currently holds.
+     */
+    void useRoutingCache(RoutingCache cache) {
+        this.routingCache = cache;
+        this.routingTable = null;
+        cache.invalidate();
+    }
+
+    /*
+     * Returns whether passengers at this stop travelling to the given
+     * destination should travel to the given next stop.
+     */
+    private boolean isRoutedVia(Stop destination, Stop nextStop) {
+        return nextStop != null && destination != this
+                && nextStopTo(destination) == nextStop;
+    }
+
+    /*
+     * Moves the passengers on the given vehicle whose destinations meet the
+     * given condition off it, and places them at this stop.
+     */
+    private void leave(PublicTransport transport, Predicate<Stop> leaving) {
+        PassengerQueue alighting = transport.alight(leaving);
+        PassengerStore source = alighting.getStore();
+        while (!alighting.isEmpty()) {
+            queue(store.transfer(source, alighting.poll()));
+        }
+        transport.alightCounts(leaving).forEach(this::count);
+    }
 }
@@ -0,0 +1,333 @@
+package stops;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the connections between stops in the transportation network,
+ * with each stop assigned a dense integer index.
+ *
+ * <p>The neighbours of every stop (see {@link Stop#getNeighbours()}) are
+ * stored in flat arrays of indices, along with the cost (Manhattan distance)
+ * of travelling to each of them. The neighbours of the stop with index i are
+ * found at the positions from {@link #neighbourStart(int)} up to (but not
+ * including) {@link #neighbourEnd(int)}. The stops which have the stop with
+ * index i as a neighbour are stored in the same way (see
+ * {@link #predecessorStart(int)}).
+ *
+ * <p>The graph does not change when stops are later connected to each other,
+ * so a new graph should be created after the network changes.
+ */
+public class StopGraph {
+    // the stops in the graph, in index order
+    private Stop[] stops;
+
+    // the index of each stop in the graph
+    private Map<Stop, Integer> indices;
+
+    // the position of the first neighbour of each stop, followed by the
+    // total number of connections
+    private int[] offsets;
+
+    // the index of each neighbour, and the cost of travelling to it
+    private int[] targets;
+    private int[] weights;
+
+    // the position of the first predecessor of each stop, followed by the
+    // total number of connections
+    private int[] reverseOffsets;
+
+    // the index of each predecessor, and the cost of travelling from it
+    private int[] sources;
+    private int[] reverseWeights;
+
+    /**
+     * Creates a new StopGraph containing the given stops, along with any
+     * other stops which are reachable from them.
+     *
+     * <p>The given stops are assigned indices in iteration order, followed by
+     * any other reachable stops in the order in which they are found. Null
+     * stops, and stops equal to one already in the graph, are ignored.
+     *
+     * @param stops The stops to include in the graph.
+     */
+    public StopGraph(Collection<Stop> stops) {
+        this.indices = new HashMap<>();
+        List<Stop> indexed = new ArrayList<>();
+        for (Stop stop : stops) {
+            indexOf(stop, indexed);
+        }
+
+        // neighbours are fetched once, adding any stops not yet indexed
+        List<List<Stop>> neighbours = new ArrayList<>();
+        int connections = 0;
+        for (int i = 0; i < indexed.size(); i++) {
+            List<Stop> adjacent = indexed.get(i).getNeighbours();
+            for (Stop neighbour : adjacent) {
+                indexOf(neighbour, indexed);
+            }
+            neighbours.add(adjacent);
+            connections += adjacent.size();
+        }
+        this.stops = indexed.toArray(new Stop[0]);
+
+        int size = this.stops.length;
+        this.offsets = new int[size + 1];
+        this.targets = new int[connections];
+        this.weights = new int[connections];
+        int[] predecessorCounts = new int[size + 1];
+
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            this.offsets[i] = position;
+            for (Stop neighbour : neighbours.get(i)) {
+                int target = this.indices.get(neighbour);
+                this.targets[position] = target;
+                this.weights[position] = this.stops[i].distanceTo(neighbour);
+                predecessorCounts[target + 1]++;
+                position++;
+            }
+        }
+        this.offsets[size] = position;
+
+        // store each connection again, grouped by the stop it leads to
+        this.reverseOffsets = predecessorCounts;
+        for (int i = 0; i < size; i++) {
+            this.reverseOffsets[i + 1] += this.reverseOffsets[i];
+        }
+        this.sources = new int[connections];
+        this.reverseWeights = new int[connections];
+        int[] filled = new int[size];
+        for (int i = 0; i < size; i++) {
+            for (int edge = this.offsets[i]; edge < this.offsets[i + 1];
+                 edge++) {
+                int target = this.targets[edge];
+                int slot = this.reverseOffsets[target] + filled[target]++;
+                this.sources[slot] = i;
+                this.reverseWeights[slot] = this.weights[edge];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of stops in this graph.
+     *
+     * @return The number of stops.
+     */
+    public int size() {
+        return this.stops.length;
+    }
+
+    /**
+     * Returns the stop with the given index.
+     *
+     * @param index The index of the stop.
+     * @return The stop with the given index.
+     * @throws IndexOutOfBoundsException If there is no stop with the given
+     *         index.
+     */
+    public Stop getStop(int index) {
+        if (index < 0 || index >= this.stops.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.stops[index];
+    }
+
+    /**
+     * Returns the index of the given stop in this graph.
+     *
+     * @param stop The stop to find.
+     * @return The index of the stop, or -1 if it is null or not in the graph.
+     */
+    public int indexOf(Stop stop) {
+        if (stop == null) {
+            return -1;
+        }
+
+        Integer index = this.indices.get(stop);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the position of the first neighbour of the stop with the given
+     * index.
+     *
+     * @param index The index of the stop.
+     * @return The position of the stop's first neighbour.
+     */
+    public int neighbourStart(int index) {
+        return this.offsets[index];
+    }
+
+    /**
+     * Returns the position after the last neighbour of the stop with the given
+     * index.
+     *
+     * @param index The index of the stop.
+     * @return The position after the stop's last neighbour.
+     */
+    public int neighbourEnd(int index) {
+        return this.offsets[index + 1];
+    }
+
+    /**
+     * Returns the index of the neighbour at the given position.
+     *
+     * @param position The position of the neighbour.
+     * @return The index of the neighbouring stop.
+     */
+    public int neighbourAt(int position) {
+        return this.targets[position];
+    }
+
+    /**
+     * Returns the cost of travelling to the neighbour at the given position.
+     *
+     * @param position The position of the neighbour.
+     * @return The cost of travelling to the neighbouring stop.
+     */
+    public int costAt(int position) {
+        return this.weights[position];
+    }
+
+    /**
+     * Returns the position of the first predecessor (i.e. a stop which has
+     * this stop as a neighbour) of the stop with the given index.
+     *
+     * @param index The index of the stop.
+     * @return The position of the stop's first predecessor.
+     */
+    public int predecessorStart(int index) {
+        return this.reverseOffsets[index];
+    }
+
+    /**
+     * Returns the position after the last predecessor of the stop with the
+     * given index.
+     *
+     * @param index The index of the stop.
+     * @return The position after the stop's last predecessor.
+     */
+    public int predecessorEnd(int index) {
+        return this.reverseOffsets[index + 1];
+    }
+
+    /**
+     * Returns the index of the predecessor at the given position.
+     *
+     * @param position The position of the predecessor.
+     * @return The index of the predecessor stop.
+     */
+    public int predecessorAt(int position) {
+        return this.sources[position];
+    }
+
+    /**
+     * Returns the cost of travelling from the predecessor at the given
+     * position.
+     *
+     * @param position The position of the predecessor.
+     * @return The cost of travelling from the predecessor stop.
+     */
+    public int predecessorCostAt(int position) {
+        return this.reverseWeights[position];
+    }
+
+    /**
+     * Returns the indices of every stop reachable from the stop with the given
+     * index (including itself), by following neighbours.
+     *
+     * @param source The index of the stop to start from.
+     * @return The set of indices of all reachable stops.
+     */
+    public BitSet reachableFrom(int source) {
+        BitSet visited = new BitSet(this.stops.length);
+        int[] stack = new int[this.stops.length];
+        int top = 0;
+
+        visited.set(source);
+        stack[top++] = source;
+        while (top > 0) {
+            int current = stack[--top];
+            for (int edge = this.offsets[current];
+                 edge < this.offsets[current + 1]; edge++) {
+                int neighbour = this.targets[edge];
+                if (!visited.get(neighbour)) {
+                    visited.set(neighbour);
+                    stack[top++] = neighbour;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Labels every stop in this graph with the connected component it belongs
+     * to.
+     *
+     * <p>Two stops are in the same component if one can be reached from the
+     * other, following connections in either direction. Components are
+     * numbered from 0, in order of the lowest index of any stop they contain.
+     *
+     * @return The component label of each stop, by index.
+     */
+    public int[] getComponents() {
+        int size = this.stops.length;
+        int[] labels = new int[size];
+        BitSet visited = new BitSet(size);
+        int[] stack = new int[size];
+        int component = 0;
+
+        for (int start = visited.nextClearBit(0); start < size;
+             start = visited.nextClearBit(start + 1)) {
+            int top = 0;
+            visited.set(start);
+            stack[top++] = start;
+
+            while (top > 0) {
+                int current = stack[--top];
+                labels[current] = component;
+                for (int edge = this.offsets[current];
+                     edge < this.offsets[current + 1]; edge++) {
+                    int neighbour = this.targets[edge];
+                    if (!visited.get(neighbour)) {
+                        visited.set(neighbour);
+                        stack[top++] = neighbour;
+                    }
+                }
+                for (int edge = this.reverseOffsets[current];
+                     edge < this.reverseOffsets[current + 1]; edge++) {
+                    int predecessor = this.sources[edge];
+                    if (!visited.get(predecessor)) {
+                        visited.set(predecessor);
+                        stack[top++] = predecessor;
+                    }
+                }
+            }
+            component++;
+        }
+        return labels;
+    }
+
+    /*
+     * Returns the index of the given stop, adding it to the given list of
+     * indexed stops if it has not been indexed before. Returns -1 for null.
+     */
+    private int indexOf(Stop stop, List<Stop> indexed) {
+        if (stop == null) {
+            return -1;
+        }
+
+        Integer index = this.indices.get(stop);
+        if (index == null) {
+            index = indexed.size();
+            this.indices.put(stop, index);
+            indexed.add(stop);
+        }
+        return index;
+    }
+}
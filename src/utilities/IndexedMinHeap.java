@@ -0,0 +1,238 @@
+package utilities;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of integer items, each with an integer key.
+ *
+ * <p>Items are non-negative integers (typically indices into some other
+ * array), and each item can be in the heap at most once. The key of an item
+ * already in the heap can be lowered in place, which makes the heap suitable
+ * for shortest path searches without creating an object for every entry.
+ *
+ * <p>The heap grows as required to hold larger items.
+ */
+public class IndexedMinHeap {
+    // the position of an item which is not currently in the heap
+    private static final int ABSENT = -1;
+
+    // the items in the heap, in heap order
+    private int[] heap;
+
+    // the key of each item
+    private int[] keys;
+
+    // the position of each item in the heap, or ABSENT
+    private int[] positions;
+
+    // the number of items currently in the heap
+    private int size;
+
+    /**
+     * Creates a new empty heap with room for items from 0 up to (but not
+     * including) the given capacity.
+     *
+     * @param capacity The initial capacity of the heap.
+     */
+    public IndexedMinHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.heap = new int[capacity];
+        this.keys = new int[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(this.positions, ABSENT);
+        this.size = 0;
+    }
+
+    /**
+     * Returns whether the heap is empty.
+     *
+     * @return True if there are no items in the heap, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of items in the heap.
+     *
+     * @return The number of items in the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the given item is currently in the heap.
+     *
+     * @param item The item to check for.
+     * @return True if the item is in the heap, false otherwise.
+     */
+    public boolean contains(int item) {
+        return item >= 0 && item < positions.length
+                && positions[item] != ABSENT;
+    }
+
+    /**
+     * Adds the given item to the heap with the given key, or lowers its key
+     * if it is already in the heap with a higher key.
+     *
+     * <p>If the item is already in the heap with a key lower than or equal to
+     * the given key, the heap remains unchanged.
+     *
+     * @param item The item to add, which must not be negative.
+     * @param key The key of the item.
+     * @return True if the item was added or its key was lowered, false if the
+     * heap remained unchanged.
+     */
+    public boolean offer(int item, int key) {
+        if (item >= positions.length) {
+            grow(item + 1);
+        }
+
+        if (positions[item] == ABSENT) {
+            heap[size] = item;
+            positions[item] = size;
+            keys[item] = key;
+            size++;
+        } else if (key < keys[item]) {
+            keys[item] = key;
+        } else {
+            return false;
+        }
+
+        siftUp(positions[item]);
+        return true;
+    }
+
+    /**
+     * Sets the key of the given item, which may be higher or lower than its
+     * current key, adding the item to the heap if it is not already in it.
+     *
+     * @param item The item to update, which must not be negative.
+     * @param key The new key of the item.
+     */
+    public void update(int item, int key) {
+        if (!contains(item)) {
+            offer(item, key);
+            return;
+        }
+
+        int previous = keys[item];
+        keys[item] = key;
+        if (key < previous) {
+            siftUp(positions[item]);
+        } else {
+            siftDown(positions[item]);
+        }
+    }
+
+    /**
+     * Returns the key of the item with the lowest key, without removing it.
+     *
+     * @return The lowest key in the heap.
+     * @throws NoSuchElementException If the heap is empty.
+     */
+    public int peekKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[heap[0]];
+    }
+
+    /**
+     * Removes and returns the item with the lowest key.
+     *
+     * @return The item with the lowest key.
+     * @throws NoSuchElementException If the heap is empty.
+     */
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        int item = heap[0];
+        size--;
+        positions[item] = ABSENT;
+
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return item;
+    }
+
+    /**
+     * Removes all items from the heap.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = ABSENT;
+        }
+        size = 0;
+    }
+
+    /*
+     * Moves the item at the given position up the heap until its parent has a
+     * key no greater than its own.
+     */
+    private void siftUp(int position) {
+        int item = heap[position];
+        int key = keys[item];
+
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = item;
+        positions[item] = position;
+    }
+
+    /*
+     * Moves the item at the given position down the heap until neither of its
+     * children has a lower key than its own.
+     */
+    private void siftDown(int position) {
+        int item = heap[position];
+        int key = keys[item];
+        int half = size >>> 1;
+
+        while (position < half) {
+            int childPosition = 2 * position + 1;
+            int child = heap[childPosition];
+            int rightPosition = childPosition + 1;
+            if (rightPosition < size && keys[heap[rightPosition]] < keys[child]) {
+                childPosition = rightPosition;
+                child = heap[childPosition];
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            heap[position] = child;
+            positions[child] = position;
+            position = childPosition;
+        }
+        heap[position] = item;
+        positions[item] = position;
+    }
+
+    /*
+     * Grows the heap to hold items up to at least the given capacity.
+     */
+    private void grow(int minimumCapacity) {
+        int capacity = Math.max(minimumCapacity, positions.length * 2);
+        int oldCapacity = positions.length;
+
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, oldCapacity, capacity, ABSENT);
+    }
+}
@@ -1,5 +1,8 @@
 package utilities;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * Defines the interface for classes which are able to be encoded for writing
  * into files.
@@ -13,4 +16,74 @@ public interface Writeable {
      * @return A string representation of the object.
      */
     String encode();
+
+    /**
+     * Appends the string representation of the object returned by
+     * {@link #encode()} to the given appendable.
+     *
+     * <p>This allows the object to be written straight to a file, or to a
+     * larger string, without first creating a string of its own
+     * representation. By default, the string returned by {@link #encode()}
+     * is appended; implementing classes may append their representation
+     * piece by piece instead.
+     *
+     * @param out The appendable to append the representation to.
+     * @throws IOException If an IO error occurs whilst appending.
+     */
+    default void encode(Appendable out) throws IOException {
+        out.append(encode());
+    }
+
+    /**
+     * Creates the string representation of the given object by appending it
+     * to a new string builder with {@link #encode(Appendable)}.
+     *
+     * <p>Implementing classes which append their representation piece by
+     * piece may implement {@link #encode()} with this method, so that both
+     * forms of the representation come from the same code.
+     *
+     * @param writeable The object to encode.
+     * @return The string representation of the object.
+     */
+    static String encodeToString(Writeable writeable) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            writeable.encode(builder);
+        } catch (IOException e) {
+            // appending to a string builder never fails
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends the decimal representation of the given integer (as given by
+     * {@link Integer#toString(int)}) to the given appendable, without
+     * creating a string.
+     *
+     * @param out The appendable to append the integer to.
+     * @param value The integer to append.
+     * @throws IOException If an IO error occurs whilst appending.
+     */
+    static void appendInt(Appendable out, int value) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(value);
+            return;
+        }
+
+        // work with the negated value, so that Integer.MIN_VALUE is handled
+        if (value < 0) {
+            out.append('-');
+        } else {
+            value = -value;
+        }
+
+        int divisor = 1;
+        while (value / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' - (value / divisor) % 10));
+        }
+    }
 }
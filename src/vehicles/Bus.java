@@ -2,6 +2,8 @@ package vehicles;
 
 import routes.Route;
 
+import java.io.IOException;
+
 /**
  * Represents a bus in the transportation network.
  */
@@ -45,7 +47,7 @@ public class Bus extends PublicTransport {
     }
 
     /**
-     * Encodes this bus as a string in the same format as specified in
+     * Appends this bus, encoded in the same format as specified in
      * {@link PublicTransport#encode()}, but with an additional component at
      * the end, namely the bus registration number. The encoded format should
      * be as follows:
@@ -58,10 +60,13 @@ public class Bus extends PublicTransport {
      *
      * <p>bus,1,30,1,ABC123
      *
-     * @return This bus encoded as a string.
+     * @param out The appendable to append the encoded bus to.
+     * @throws IOException If an IO error occurs whilst appending.
      */
     @Override
-    public String encode() {
-        return super.encode() + "," + registrationNumber;
+    public void encode(Appendable out) throws IOException {
+        super.encode(out);
+        out.append(',');
+        out.append(registrationNumber);
     }
 }
@@ -2,6 +2,8 @@ package vehicles;
 
 import routes.Route;
 
+import java.io.IOException;
+
 /**
  * Represents a ferry in the transportation network.
  */
@@ -43,7 +45,7 @@ public class Ferry extends PublicTransport {
     }
 
     /**
-     * Encodes this ferry as a string in the same format as specified in
+     * Appends this ferry, encoded in the same format as specified in
      * {@link PublicTransport#encode()}, but with an additional component at
      * the end, namely the ferry type. The encoded format should be as follows:
      *
@@ -56,10 +58,13 @@ public class Ferry extends PublicTransport {
      *
      * <p>ferry,2,50,2,CityCat
      *
-     * @return This ferry encoded as a string.
+     * @param out The appendable to append the encoded ferry to.
+     * @throws IOException If an IO error occurs whilst appending.
      */
     @Override
-    public String encode() {
-        return super.encode() + "," + ferryType;
+    public void encode(Appendable out) throws IOException {
+        super.encode(out);
+        out.append(',');
+        out.append(ferryType);
     }
 }
@@ -5,23 +5,49 @@ import exceptions.OverCapacityException;
 import exceptions.TransportException;
 import exceptions.TransportFormatException;
 import passengers.Passenger;
+import passengers.PassengerCounts;
+import passengers.PassengerQueue;
+import passengers.PassengerStore;
 import routes.Route;
 import stops.Stop;
 import utilities.Writeable;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 /**
  * A base public transport vehicle in the transportation network.
  */
 public abstract class PublicTransport implements Writeable {
-    // the passengers currently on board the vehicle
-    private List<Passenger> passengers;
+    // the store holding the passengers currently on board the vehicle
+    private PassengerStore store;
+
+    // the passengers currently on board the vehicle, as handles into its
+    // store, queued by their destination (or null if they have none)
+    private Map<Stop, PassengerQueue> passengers;
+
+    // the numbers of passengers counted on board the vehicle, by their
+    // destination
+    private PassengerCounts counted;
+
+    // the number of passengers currently on board the vehicle, including
+    // those counted
+    private int passengerCount;
 
     // the place the vehicle is currently stopped
     private Stop currentLocation;
 
+    // the place the vehicle was stopped before its current location, or null
+    // if it has not moved
+    private Stop previousLocation;
+
     // the maximum passengers allowed on board the vehicle
     private int capacity;
 
@@ -50,7 +76,10 @@ public abstract class PublicTransport implements Writeable {
      *              not be tested with a null value.
      */
     public PublicTransport(int id, int capacity, Route route) {
-        this.passengers = new ArrayList<>();
+        this.store = new PassengerStore();
+        this.passengers = new HashMap<>();
+        this.counted = new PassengerCounts();
+        this.passengerCount = 0;
         this.capacity = capacity < 0 ? 0 : capacity;
         this.id = id;
         this.route = route;
@@ -90,12 +119,26 @@ public abstract class PublicTransport implements Writeable {
     }
 
     /**
-     * Returns the number of passengers currently on board this vehicle.
+     * Returns the stop this vehicle will reach next if it carries on along
+     * its route in its current direction of travel (see
+     * {@link Route#nextStop(Stop, Stop)}).
+     *
+     * @return The next stop on the vehicle's route, or null if it is at the
+     * end of its route, or not located at a stop.
+     */
+    public Stop getNextStop() {
+        return route.nextStop(previousLocation, currentLocation);
+    }
+
+    /**
+     * Returns the number of passengers currently on board this vehicle,
+     * including those counted rather than boarded individually (see
+     * {@link #addPassengers(PassengerCounts)}).
      *
      * @return The number of passengers in the vehicle.
      */
     public int passengerCount() {
-        return passengers.size();
+        return passengerCount;
     }
 
     /**
@@ -126,11 +169,18 @@ public abstract class PublicTransport implements Writeable {
      * <p>Modifying the returned list should not result in changes to the
      * internal state of the class.
      *
+     * <p>Passengers added as objects are returned as those same objects, and
+     * others as views of them in the passenger store holding them (see
+     * {@link PassengerStore#get(int)}).
+     *
      * @return The passengers currently on the public transport vehicle.
      */
     public List<Passenger> getPassengers() {
-
-        return new ArrayList<>(passengers);
+        List<Passenger> onBoard = new ArrayList<>();
+        for (PassengerQueue alighting : passengers.values()) {
+            alighting.forEach(passenger -> onBoard.add(store.get(passenger)));
+        }
+        return onBoard;
     }
 
     /**
@@ -142,6 +192,10 @@ public abstract class PublicTransport implements Writeable {
      * <p> If the vehicle is already at (or over) capacity, an exception should
      * be thrown and the passenger should not be added to the vehicle.
      *
+     * <p>The passenger is kept with the other passengers on board travelling
+     * to the same destination, and leaves the vehicle with them (see
+     * {@link #alight(Predicate)}).
+     *
      * @param passenger The passenger boarding the vehicle.
      * @throws OverCapacityException If the vehicle is already at (or over)
      * capacity.
@@ -151,10 +205,116 @@ public abstract class PublicTransport implements Writeable {
             return;
         }
 
-        if (passengers.size() >= capacity) {
+        if (passengerCount >= capacity) {
             throw new OverCapacityException();
         }
-        passengers.add(passenger);
+        board(store.add(passenger));
+    }
+
+    /**
+     * Boards as many of the passengers waiting in the given queue onto this
+     * vehicle as its remaining capacity allows, taking them from the front of
+     * the queue in order.
+     *
+     * <p>Boarded passengers are removed from the queue, and any passengers who
+     * do not fit are left in it, in order, to wait for the next vehicle.
+     * Unlike {@link #addPassenger(Passenger)}, the vehicle being full is not
+     * treated as an error.
+     *
+     * <p>The passengers who fit are taken into a queue of handles over a
+     * store of their own, and boarded from it as described by
+     * {@link #addPassengers(PassengerQueue)}.
+     *
+     * <p>If the queue is null, or the vehicle is already at (or over)
+     * capacity, no passengers are boarded. Any null passengers taken from the
+     * queue are discarded without being boarded.
+     *
+     * @param waiting The passengers waiting to board the vehicle.
+     * @return The number of passengers who boarded the vehicle.
+     */
+    public int addPassengers(Queue<? extends Passenger> waiting) {
+        if (waiting == null) {
+            return 0;
+        }
+
+        PassengerStore taken = new PassengerStore();
+        PassengerQueue boarding = new PassengerQueue(taken);
+        int room = capacity - passengerCount;
+        while (boarding.size() < room && !waiting.isEmpty()) {
+            Passenger passenger = waiting.poll();
+            if (passenger != null) {
+                boarding.add(taken.add(passenger));
+            }
+        }
+        return addPassengers(boarding);
+    }
+
+    /**
+     * Boards as many of the passengers waiting in the given queue of handles
+     * onto this vehicle as its remaining capacity allows, taking them from
+     * the front of the queue in order. Any passengers who do not fit are left
+     * in the queue, as described by {@link #addPassengers(Queue)}.
+     *
+     * <p>The passengers are moved from the queue's store into the vehicle's
+     * own (see {@link PassengerStore#transfer(PassengerStore, int)}), without
+     * creating any objects. If the queue is null, no passengers are boarded.
+     *
+     * @param waiting The passengers waiting to board the vehicle.
+     * @return The number of passengers who boarded the vehicle.
+     */
+    public int addPassengers(PassengerQueue waiting) {
+        if (waiting == null) {
+            return 0;
+        }
+
+        PassengerStore source = waiting.getStore();
+        int boarded = 0;
+        while (passengerCount < capacity && !waiting.isEmpty()) {
+            board(store.transfer(source, waiting.poll()));
+            boarded++;
+        }
+        return boarded;
+    }
+
+    /**
+     * Boards as many of the passengers counted by the given counts onto this
+     * vehicle as its remaining capacity allows, as counts rather than
+     * individual passengers.
+     *
+     * <p>Passengers are taken from the counts as described in
+     * {@link PassengerCounts#take(int, java.util.function.ObjIntConsumer)},
+     * so boarding takes time proportional to the number of destinations
+     * rather than the number of passengers. As with
+     * {@link #addPassengers(Queue)}, the vehicle being full is not an error.
+     *
+     * <p>If the counts are null, no passengers are boarded.
+     *
+     * @param waiting The counts of passengers waiting to board the vehicle.
+     * @return The number of passengers who boarded the vehicle.
+     */
+    public int addPassengers(PassengerCounts waiting) {
+        if (waiting == null || passengerCount >= capacity) {
+            return 0;
+        }
+
+        int boarded = waiting.take(capacity - passengerCount, counted::add);
+        passengerCount += boarded;
+        return boarded;
+    }
+
+    /**
+     * Returns the numbers of passengers counted on board this vehicle (see
+     * {@link #addPassengers(PassengerCounts)}), by their destination.
+     *
+     * <p>Modifying the returned counts should not result in changes to the
+     * internal state of the class.
+     *
+     * @return The counts of passengers on the vehicle.
+     */
+    public PassengerCounts getPassengerCounts() {
+        PassengerCounts onBoard = new PassengerCounts();
+        counted.forEach(onBoard::add);
+        return onBoard;
     }
 
     /**
@@ -164,14 +324,32 @@ public abstract class PublicTransport implements Writeable {
      * should return false, and should not have any effect on the passengers
      * currently on the vehicle.
      *
+     * <p>Views of passengers (see {@link #getPassengers()}) are matched by
+     * the passenger they view, rather than by the object itself (see
+     * {@link PassengerStore#isSame(int, Passenger)}).
+     *
      * @param passenger The passenger disembarking the vehicle.
      * @return True if the passenger was successfully removed, false otherwise
      *          (including the case where the given passenger was not on board
      *          the vehicle to begin with).
      */
     public boolean removePassenger(Passenger passenger) {
+        if (passenger == null) {
+            return false;
+        }
 
-        return passengers.remove(passenger);
+        for (PassengerQueue alighting : passengers.values()) {
+            for (int next = alighting.peek(); next >= 0;
+                 next = alighting.next(next)) {
+                if (store.isSame(next, passenger)) {
+                    alighting.remove(next);
+                    store.remove(next);
+                    passengerCount--;
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -187,14 +365,109 @@ public abstract class PublicTransport implements Writeable {
      * <p>Modifying the returned list should not result in changes to the
      * internal state of the class.
      *
+     * <p>Passengers counted on the vehicle rather than boarded individually
+     * (see {@link #addPassengers(PassengerCounts)}) are removed as
+     * well, but have no passenger objects, so are not in the returned list.
+     * Their counts can be found with {@link #getPassengerCounts()} before
+     * unloading. Afterwards, {@link #passengerCount()} is 0.
+     *
      * @return The passengers who used to be on the vehicle.
      */
     public List<Passenger> unload() {
-        List<Passenger> leaving = passengers;
-        passengers = new ArrayList<>();
+        List<Passenger> leaving = new ArrayList<>();
+        for (PassengerQueue alighting : passengers.values()) {
+            release(alighting, leaving);
+        }
+        passengers.clear();
+        counted.clear();
+        passengerCount = 0;
         return leaving;
     }
 
+    /**
+     * Removes the passengers on this vehicle whose destinations meet the
+     * given condition, and returns them as a queue of handles into the
+     * vehicle's passenger store (see {@link PassengerQueue#getStore()}).
+     *
+     * <p>The condition is tested once for each destination of the passengers
+     * on board (including null, for those with no destination), and the
+     * passengers travelling to each destination which meets it leave
+     * together. Passengers travelling to other destinations stay on board
+     * and are not looked at, so alighting takes time proportional to the
+     * number of destinations on board and the number of passengers leaving.
+     * The passengers are returned in the order in which they boarded.
+     *
+     * <p>The passengers remain in the vehicle's store, taking up space in it,
+     * until they are removed from it (see {@link PassengerStore#remove(int)})
+     * or moved into another store (see
+     * {@link PassengerStore#transfer(PassengerStore, int)}).
+     *
+     * @param leaving The condition the destinations of passengers leaving the
+     *                vehicle meet.
+     * @return The passengers who left the vehicle.
+     */
+    public PassengerQueue alight(Predicate<Stop> leaving) {
+        List<PassengerQueue> alighting = new ArrayList<>();
+        Iterator<Map.Entry<Stop, PassengerQueue>> iterator =
+                passengers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Stop, PassengerQueue> entry = iterator.next();
+            if (leaving.test(entry.getKey())) {
+                alighting.add(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        PassengerQueue left = new PassengerQueue(store);
+        if (alighting.size() == 1) {
+            left.addAll(alighting.get(0));
+        } else {
+            PassengerQueue.pollAllInOrder(alighting, left::add);
+        }
+        passengerCount -= left.size();
+        return left;
+    }
+
+    /**
+     * Removes the passengers counted on this vehicle whose destinations meet
+     * the given condition, and returns their counts by destination.
+     *
+     * <p>The condition is tested once for each destination of the passengers
+     * counted on board (see
+     * {@link PassengerCounts#takeIf(Predicate)}), so this takes time
+     * proportional to the number of those destinations.
+     *
+     * @param leaving The condition the destinations of passengers leaving the
+     *                vehicle meet.
+     * @return The counts of passengers who left the vehicle.
+     */
+    public PassengerCounts alightCounts(Predicate<Stop> leaving) {
+        PassengerCounts left = counted.takeIf(leaving);
+        passengerCount -= left.total();
+        return left;
+    }
+
+    /*
+     * Adds the passenger with the given handle to this vehicle, with the
+     * other passengers travelling to the same destination.
+     */
+    private void board(int passenger) {
+        if (passengers.computeIfAbsent(store.getDestination(passenger),
+                destination -> new PassengerQueue(store)).add(passenger)) {
+            passengerCount++;
+        }
+    }
+
+    /*
+     * Removes all the passengers in the given queue from this vehicle's
+     * passenger store, adding them to the given list.
+     */
+    private void release(PassengerQueue queue, List<Passenger> released) {
+        while (!queue.isEmpty()) {
+            released.add(store.remove(queue.poll()));
+        }
+    }
+
     /**
      * Updates the current location of the vehicle to be the given stop.
      *
@@ -204,11 +477,14 @@ public abstract class PublicTransport implements Writeable {
      * @param stop The stop the vehicle has travelled to.
      */
     public void travelTo(Stop stop) {
-        if (!route.getStopsOnRoute().contains(stop)) {
+        if (!route.hasStop(stop)) {
             return;
         }
 
-        currentLocation = stop == null ? currentLocation : stop;
+        if (stop != currentLocation) {
+            previousLocation = currentLocation;
+        }
+        currentLocation = stop;
     }
 
     /**
@@ -250,8 +526,24 @@ public abstract class PublicTransport implements Writeable {
      */
     @Override
     public String encode() {
-        return getType() + "," + id + "," + capacity + ","
-                + route.getRouteNumber();
+        return Writeable.encodeToString(this);
+    }
+
+    /**
+     * Appends this vehicle, encoded in the same format as specified in
+     * {@link PublicTransport#encode()}, to the given appendable.
+     *
+     * @param out The appendable to append the encoded vehicle to.
+     * @throws IOException If an IO error occurs whilst appending.
+     */
+    @Override
+    public void encode(Appendable out) throws IOException {
+        out.append(getType()).append(',');
+        Writeable.appendInt(out, id);
+        out.append(',');
+        Writeable.appendInt(out, capacity);
+        out.append(',');
+        Writeable.appendInt(out, route.getRouteNumber());
     }
 
     /*
@@ -365,7 +657,46 @@ public abstract class PublicTransport implements Writeable {
         if (transportString == null || existingRoutes == null) {
             throw new TransportFormatException();
         }
+        return decode(transportString,
+                routeNumber -> routeFromNumber(routeNumber, existingRoutes));
+    }
+
+    /**
+     * Creates a new public transport object based on the given string
+     * representation, as described in {@link #decode(String, List)}, finding
+     * its route in the given index of routes by number rather than searching
+     * a list.
+     *
+     * <p>Each route number should be mapped to the route to add the vehicle
+     * to, which should be the first route in the network with that number
+     * (see {@link network.Network#findRoute(int)}).
+     *
+     * @param transportString The string to decode.
+     * @param routesByNumber The routes which currently exist in the transport
+     *                       network, by route number.
+     * @return The decoded public transport object (a Bus, Train, or Ferry,
+     *          depending on the type given in the string).
+     * @throws TransportFormatException If the given string or routesByNumber
+     *          map is null, or the string is otherwise incorrectly formatted,
+     *          as described in {@link #decode(String, List)}.
+     */
+    public static PublicTransport decodeIndexed(String transportString,
+            Map<Integer, Route> routesByNumber)
+            throws TransportFormatException {
+        if (transportString == null || routesByNumber == null) {
+            throw new TransportFormatException();
+        }
+        return decode(transportString, routesByNumber::get);
+    }
 
+    /*
+     * Decodes the given transport string, using the given function to find
+     * the route with each number, which returns null if there is no such
+     * route.
+     */
+    private static PublicTransport decode(String transportString,
+                                          IntFunction<Route> routeFinder)
+            throws TransportFormatException {
         PublicTransport vehicle;
         try {
             String[] parts = transportString.split(",");
@@ -384,7 +715,7 @@ public abstract class PublicTransport implements Writeable {
             int capacity = Integer.parseInt(parts[2].trim());
             int routeNumber = Integer.parseInt(parts[3].trim());
             // Check if route is valid
-            Route route = routeFromNumber(routeNumber, existingRoutes);
+            Route route = routeFinder.apply(routeNumber);
             if (route == null) {
                 throw new TransportFormatException();
             }
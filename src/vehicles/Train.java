@@ -1,6 +1,9 @@
 package vehicles;
 
 import routes.Route;
+import utilities.Writeable;
+
+import java.io.IOException;
 
 /**
  * Represents a train in the transportation network.
@@ -40,7 +43,7 @@ public class Train extends PublicTransport {
     }
 
     /**
-     * Encodes this train as a string in the same format as specified in
+     * Appends this train, encoded in the same format as specified in
      * {@link PublicTransport#encode()}, but with an additional component at
      * the end, namely the carriage count. The encoded format should be as
      * follows:
@@ -54,10 +57,13 @@ public class Train extends PublicTransport {
      *
      * <p>train,3,100,3,5
      *
-     * @return This train encoded as a string.
+     * @param out The appendable to append the encoded train to.
+     * @throws IOException If an IO error occurs whilst appending.
      */
     @Override
-    public String encode() {
-        return super.encode() + "," + carriageCount;
+    public void encode(Appendable out) throws IOException {
+        super.encode(out);
+        out.append(',');
+        Writeable.appendInt(out, carriageCount);
     }
 }